@@ -0,0 +1,59 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.asm.RVSimulator;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.Serialization;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 只运行后端: 从保存下来的 IR 文件直接模拟执行并生成汇编, 不做词法与语法分析
+ * <br>
+ * 用法: {@code Backend [--jit] [--profile] [IR 文件]}, 默认读取 Main 保存的二进制 IR ({@link FilePathConfig#INTERMEDIATE_CODE_BINARY_PATH}),
+ * 也可以是 intermediate_code.txt 格式的文本. 结果写入与 Main 相同的输出文件, 各阶段的耗时输出到标准输出.
+ * 生成的汇编还会由 {@link RVSimulator} 在进程内执行, 输出 a0 的值, 指令数与估计的周期数.
+ * 指定 --jit 时先把 IR 编译为 JVM 字节码再执行 (见 {@link cn.edu.hitsz.compiler.utils.IRCompiler}), 适合很大的 IR.
+ * 指定 --profile 时以剖析模式执行, 并把剖析报告写入 {@link FilePathConfig#EMULATE_PROFILE}.
+ */
+public class Backend {
+    public static void main(String[] args) {
+        final var options = Arrays.stream(args).filter(arg -> arg.startsWith("--")).toList();
+        final var files = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toList();
+        final var jit = options.contains("--jit");
+        final var profiling = options.contains("--profile");
+        final var path = files.isEmpty() ? FilePathConfig.INTERMEDIATE_CODE_BINARY_PATH : files.get(0);
+
+        final var context = CompilationContext.backendOnly();
+        var begin = System.nanoTime();
+        final var instructions = Serialization.loadIR(path, context.getVariables());
+        System.out.printf("load     %10.3f ms  (%d instructions)%n", (System.nanoTime() - begin) / 1e6, instructions.size());
+
+        // 模拟执行 IR 并输出结果
+        begin = System.nanoTime();
+        final var emulator = (jit ? IREmulator.loadWithJit(instructions) : IREmulator.load(instructions)).setProfiling(profiling);
+        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
+        if (profiling) {
+            emulator.getProfile().dump(FilePathConfig.EMULATE_PROFILE);
+        }
+        System.out.printf("emulate  %10.3f ms%n", (System.nanoTime() - begin) / 1e6);
+
+        // 由 IR 生成汇编
+        begin = System.nanoTime();
+        final var asmGenerator = new AssemblyGenerator(context);
+        asmGenerator.loadIR(instructions);
+        asmGenerator.run();
+        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        System.out.printf("assemble %10.3f ms%n", (System.nanoTime() - begin) / 1e6);
+
+        // 在进程内执行生成的汇编, 评估其代价
+        begin = System.nanoTime();
+        final var simulator = RVSimulator.load(asmGenerator.getRVInstructions());
+        final var a0 = simulator.run();
+        System.out.printf("simulate %10.3f ms  (a0 = %d, %d instructions, %d cycles)%n",
+            (System.nanoTime() - begin) / 1e6, a0, simulator.getInstructionCount(), simulator.getCycles());
+    }
+}
@@ -0,0 +1,147 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.asm.RegisterFile;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariablePool;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.Map;
+
+/**
+ * 一次编译的上下文
+ * <br>
+ * 持有一次编译过程中各阶段共用的状态: TokenKind 集合, 语法与 LR 分析表, 符号表, IR 变量池, 临时变量的编号以及寄存器的分配情况.
+ * 词法分析, 语法分析, IR 生成与汇编生成都从上下文而不是全局变量中取得这些状态, 因此同一个 JVM 中可以同时进行多次编译,
+ * 每次编译的临时变量都从 $0 开始编号, 结果与单独运行时相同.
+ * <br>
+ * TokenKind 集合, 语法与分析表在构造完成后只读, 可以通过 {@link #newCompilation()} 在多次编译之间共享
+ * (懒惰模式的分析表会在查询时构造状态, 不能被多个线程共享); 其余状态则每次编译各有一份. 一个上下文本身只应由一个线程使用.
+ */
+public class CompilationContext {
+    /**
+     * 从码点文件与语法文件构造一次新编译的上下文, 分析表需在之后通过 setTable 设置
+     *
+     * @return 新的上下文
+     */
+    public static CompilationContext create() {
+        final var tokenKinds = TokenKind.readTokenKinds(FilePathConfig.CODING_MAP_PATH);
+        final var grammar = GrammarInfo.parse(FileUtils.readLines(FilePathConfig.GRAMMAR_PATH), tokenKinds);
+        return new CompilationContext(tokenKinds, grammar, null, new SymbolTable());
+    }
+
+    /**
+     * 只运行后端 (模拟执行与汇编生成) 时使用的上下文, 没有 TokenKind 集合, 语法与分析表
+     *
+     * @return 新的上下文
+     */
+    public static CompilationContext backendOnly() {
+        return new CompilationContext(Map.of(), null, null, new SymbolTable());
+    }
+
+    /**
+     * @param tokenKinds  标识符到 TokenKind 的 Map
+     * @param grammar     语法
+     * @param table       由该语法构造的 LR 分析表, 可以为 null 并在之后设置
+     * @param symbolTable 本次编译使用的符号表
+     */
+    public CompilationContext(Map<String, TokenKind> tokenKinds, GrammarInfo grammar, LRTable table, SymbolTable symbolTable) {
+        this.tokenKinds = tokenKinds;
+        this.grammar = grammar;
+        this.table = table;
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * 以相同的 TokenKind 集合, 语法与分析表开始一次新的编译, 符号表, IR 变量池, 临时变量编号与寄存器状态都是新的
+     *
+     * @return 新的上下文
+     */
+    public CompilationContext newCompilation() {
+        return new CompilationContext(tokenKinds, grammar, table, new SymbolTable());
+    }
+
+    /**
+     * @return 标识符到 TokenKind 的 Map, 其键集包含了所有允许的标识符
+     */
+    public Map<String, TokenKind> getTokenKinds() {
+        return tokenKinds;
+    }
+
+    /**
+     * @param id 标识符
+     * @return 该标识符对应的 TokenKind
+     * @throws RuntimeException 该标识符不被允许作为 TokenKind 的标识符
+     */
+    public TokenKind tokenKind(String id) {
+        final var kind = tokenKinds.get(id);
+        if (kind == null) {
+            throw new RuntimeException("Illegal Identifier");
+        }
+
+        return kind;
+    }
+
+    public GrammarInfo getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * @return LR 分析表
+     * @throws RuntimeException 分析表尚未被设置
+     */
+    public LRTable getTable() {
+        if (table == null) {
+            throw new RuntimeException("LR table not set");
+        }
+
+        return table;
+    }
+
+    public void setTable(LRTable table) {
+        this.table = table;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return 本次编译的 IR 变量池, 本次编译中所有的 IRVariable 都应由它创建
+     */
+    public IRVariablePool getVariables() {
+        return variables;
+    }
+
+    public RegisterFile getRegisters() {
+        return registers;
+    }
+
+    /**
+     * @return 一个对应于源语言中的临时变量的新 IRVariable, 编号在本次编译中从 0 开始递增
+     */
+    public IRVariable newTemp() {
+        return variables.temp(tempCount++);
+    }
+
+    /**
+     * 保证之后 newTemp 分配的编号不小于 count, 以免与不是由本上下文生成的 IR (如从文件读入的) 中的临时变量重名
+     *
+     * @param count 已被占用的编号数
+     */
+    public void reserveTemps(int count) {
+        tempCount = Math.max(tempCount, count);
+    }
+
+    private final Map<String, TokenKind> tokenKinds;
+    private final GrammarInfo grammar;
+    private LRTable table;
+    private final SymbolTable symbolTable;
+    private final IRVariablePool variables = new IRVariablePool();
+    private final RegisterFile registers = new RegisterFile();
+    private int tempCount = 0;
+}
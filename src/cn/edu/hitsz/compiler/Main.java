@@ -1,34 +1,44 @@
 package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.pass.AlgebraicSimplification;
+import cn.edu.hitsz.compiler.ir.pass.ConstantPropagation;
+import cn.edu.hitsz.compiler.ir.pass.CopyPropagation;
+import cn.edu.hitsz.compiler.ir.pass.DeadCodeElimination;
+import cn.edu.hitsz.compiler.ir.pass.PartialEvaluation;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.ir.pass.RangeFolding;
+import cn.edu.hitsz.compiler.ir.pass.SSAConstruction;
+import cn.edu.hitsz.compiler.ir.pass.SethiUllmanOrdering;
+import cn.edu.hitsz.compiler.ir.pass.ValueNumbering;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
 import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
-import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
 import cn.edu.hitsz.compiler.parser.table.TableGenerator;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.Serialization;
 
 import java.util.Objects;
 
 public class Main {
     public static void main(String[] args) {
-        // 构建符号表以供各部分使用
-        TokenKind.loadTokenKinds();
-        final var symbolTable = new SymbolTable();
+        // 构建本次编译的上下文, 其中的符号表供各部分使用
+        final var context = CompilationContext.create();
+        final var symbolTable = context.getSymbolTable();
 
         // 词法分析
-        final var lexer = new LexicalAnalyzer(symbolTable);
+        final var lexer = new LexicalAnalyzer(context);
         lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
         lexer.run();
         lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
         final var tokens = lexer.getTokens();
+        Serialization.writeTokens(FilePathConfig.TOKEN_BINARY_PATH, tokens);
         symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
 
         // 读取第三方程序构造的 LR 分析表
@@ -36,18 +46,22 @@ public class Main {
 //        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
 
         // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        final var tableGenerator = new TableGenerator();
+        final var tableGenerator = new TableGenerator(context.getGrammar().productionsInOrder(), context.getTokenKinds().values());
         tableGenerator.run();
         final var lrTable = tableGenerator.getTable();
+        // // 或使用懒惰模式, 只在语法分析用到某个状态时才构造它 (此时不需要调用 run)
+        // // 懒惰的表在语法分析之前只有起始状态, 所以还要删去下面这行 dumpTable, 改为在 parser.run() 之后再 dump
+        // final var lrTable = tableGenerator.getLazyTable();
         lrTable.dumpTable("data/out/lrTable.csv");
+        context.setTable(lrTable);
 
         // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
+        final var parser = new SyntaxAnalyzer(context);
         parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
+        parser.loadLRTable(context.getTable());
 
         // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        final var productionCollector = new ProductionCollector(context.getGrammar().beginProduction());
         parser.registerObserver(productionCollector);
 
         // 加入用作语义检查的 Observer
@@ -55,24 +69,46 @@ public class Main {
         parser.registerObserver(semanticAnalyzer);
 
         // 加入用作 IR 生成的 Observer
-        final var irGenerator = new IRGenerator();
+        final var irGenerator = new IRGenerator(context);
+        // // 或在规约时就折叠常量并复用同一语句中相同运算的结果
+        // final var irGenerator = new IRGenerator(context, true);
         parser.registerObserver(irGenerator);
 
         // 执行语法解析并在解析过程中依次调用各 Observer
         parser.run();
+        // // 懒惰模式下在此处 dump LR 表, 其中只有本次语法分析构造过的状态
+        // lrTable.dumpTable("data/out/lrTable.csv");
 
         // 各 Observer 输出结果
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
         symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
-        irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+        irGenerator.dumpIR(FilePathConfig.RAW_INTERMEDIATE_CODE_PATH);
+
+        // 依次执行各优化遍, 之后的模拟执行与汇编生成都使用优化后的 IR
+        // 部分求值在返回值于编译期已知时直接得到最小的程序, 否则由之后的各遍继续优化
+        // 最后按寄存器需求重排表达式的求值顺序, 减少汇编生成时同时占用的寄存器
+        final var passManager = new PassManager()
+            .add(new PartialEvaluation())
+            .add(new SSAConstruction())
+            .add(new ConstantPropagation())
+            .add(new AlgebraicSimplification())
+            .add(new ValueNumbering())
+            .add(new RangeFolding())
+            .add(new CopyPropagation())
+            .add(new DeadCodeElimination(symbolTable))
+            .add(new SethiUllmanOrdering());
+        final var instructions = passManager.run(irGenerator.getIR());
+        passManager.dumpReport(FilePathConfig.PASS_REPORT_PATH);
+        FileUtils.writeLines(FilePathConfig.INTERMEDIATE_CODE_PATH, instructions.stream().map(Instruction::toString).toList());
+        // 保存二进制形式, 之后可以用 Backend 直接从它开始运行后端
+        Serialization.writeIR(FilePathConfig.INTERMEDIATE_CODE_BINARY_PATH, instructions);
 
         // 模拟执行 IR 并输出结果
         final var emulator = IREmulator.load(instructions);
         FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
 
         // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
+        final var asmGenerator = new AssemblyGenerator(context);
         asmGenerator.loadIR(instructions);
         asmGenerator.run();
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
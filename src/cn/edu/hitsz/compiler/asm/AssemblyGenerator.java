@@ -1,10 +1,10 @@
 package cn.edu.hitsz.compiler.asm;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.ir.*;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -27,11 +27,18 @@ import static java.util.Collections.swap;
  */
 public class AssemblyGenerator {
 
+    private final CompilationContext context;
+    private final RegisterFile regs;
     private List<Instruction> instructions = null;
-    private final HashMap<IRVariable, Integer> lastUse = new HashMap<>();
-    private final HashMap<Integer, List<IRVariable>> timeToUnbind = new HashMap<>();
+    private Liveness liveness = null;
+    private RangeAnalysis ranges = null;
     private final List<RVInstruction> rvInsts = new LinkedList<>();
 
+    public AssemblyGenerator(CompilationContext context) {
+        this.context = context;
+        this.regs = context.getRegisters();
+    }
+
     /**
      * 加载前端提供的中间代码
      * <br>
@@ -41,20 +48,11 @@ public class AssemblyGenerator {
      * @param originInstructions 前端提供的中间代码
      */
     public void loadIR(List<Instruction> originInstructions) {
-        instructions = originInstructions;
-        for(int i = 0; i < instructions.size(); i++) {
-            if(instructions.get(i).getKind().isReturn()) {
-                continue;
-            }
-            updateLastUse(instructions.get(i).getResult(), i);
-        }
+        // 下面会把 GT 改写为 LT, 不修改调用者的列表
+        instructions = new ArrayList<>(originInstructions);
+        reserveTemps();
         for(int i = 0; i < instructions.size(); i++) {
             var inst = instructions.get(i);
-            for(IRValue var : inst.getOperands()) {
-                if(var.isIRVariable()) {
-                    updateLastUse((IRVariable) var, i);
-                }
-            }
             if(inst.getKind() == InstructionKind.GT) {
                 instructions.set(i, Instruction.createLt(
                     inst.getResult(),
@@ -63,24 +61,32 @@ public class AssemblyGenerator {
                 ));
             }
         }
+        // 每个定义各自有活跃区间, 被重新定义的变量在两次定义之间不占用寄存器
+        liveness = Liveness.analyze(instructions);
+        // 值域用于选择更窄的指令形式, 如立即数能放进 12 位时使用 addi/slti
+        ranges = RangeAnalysis.analyze(instructions);
+    }
 
-        for(IRVariable var : lastUse.keySet()) {
-            if(!timeToUnbind.containsKey(lastUse.get(var))) {
-                timeToUnbind.put(lastUse.get(var), new LinkedList<>());
+    /**
+     * 汇编生成中用来存放立即数的临时变量不能与 IR 中已有的临时变量重名
+     */
+    private void reserveTemps() {
+        for (final var inst : instructions) {
+            for (final var value : inst.getOperands()) {
+                if (value instanceof IRVariable var && var.isTemp()) {
+                    context.reserveTemps(tempNumber(var) + 1);
+                }
+            }
+            if (inst.getKind().hasResult() && inst.getResult().isTemp()) {
+                context.reserveTemps(tempNumber(inst.getResult()) + 1);
             }
-            timeToUnbind.get(lastUse.get(var)).add(var);
         }
     }
 
-    private void updateLastUse(IRVariable var, int index) {
-        if (lastUse.containsKey(var)) {
-            lastUse.put(var, Math.max(lastUse.get(var), index));
-        } else {
-            lastUse.put(var, index);
-        }
+    private static int tempNumber(IRVariable temp) {
+        return Integer.parseInt(temp.getBase().getName().substring(1));
     }
 
-
     /**
      * 执行代码生成.
      * <br>
@@ -97,7 +103,14 @@ public class AssemblyGenerator {
             if(kind.isUnary()) {
                 // only MOV
                 var src = inst.getOperands().get(0);
-                var dst = Reg.getReg(inst.getResult());
+                if(src instanceof IRVariable from && !regs.hasReg(inst.getResult()) && liveness.dyingAt(i).contains(from)) {
+                    // coalesce: the source dies here, so the destination takes over its register without a copy
+                    regs.getReg(from);
+                    regs.rename(from, inst.getResult());
+                    freeDying(i);
+                    continue;
+                }
+                var dst = regs.getReg(inst.getResult());
                 if (src.isImmediate()) {
                     rvInsts.add(new RVInstruction("li", List.of(
                             dst.toString(),
@@ -106,7 +119,7 @@ public class AssemblyGenerator {
                 } else {
                     rvInsts.add(new RVInstruction("addi", List.of(
                             dst.toString(),
-                            Reg.getReg((IRVariable) src).toString(),
+                            regs.getReg((IRVariable) src).toString(),
                             "0"
                     )));
                 }
@@ -120,14 +133,26 @@ public class AssemblyGenerator {
                 } else {
                     rvInsts.add(new RVInstruction("addi", List.of(
                         "x10",
-                        Reg.getReg((IRVariable) src).toString(),
+                        regs.getReg((IRVariable) src).toString(),
                         "0"
                     )));
                 }
                 return;
-            } else if(kind == InstructionKind.ADD && (inst.getLHS().isImmediate() != inst.getRHS().isImmediate())) {
-                // ADD can be optimized to ADDI
-                var dst = Reg.getReg(inst.getResult());
+            } else if(ranges.isDecided(i)) {
+                // the result of LT or the predicate of CMOV is known from the ranges of its operands
+                var dst = regs.getReg(inst.getResult());
+                if(kind != InstructionKind.CMOV) {
+                    rvInsts.add(new RVInstruction("li", List.of(
+                        dst.toString(),
+                        String.valueOf(ranges.resultRange(i).min())
+                    )));
+                } else if(!ranges.operandRange(i, 0).contains(0)) {
+                    move(dst, inst.getRHS());
+                }
+            } else if(kind == InstructionKind.ADD && (inst.getLHS().isImmediate() != inst.getRHS().isImmediate())
+                    && fitsImm12(inst.getLHS().isImmediate() ? inst.getLHS() : inst.getRHS())) {
+                // ADD can be optimized to ADDI if the immediate fits in 12 bits
+                var dst = regs.getReg(inst.getResult());
                 var op1 = inst.getOperands().get(0);
                 var op2 = inst.getOperands().get(1);
                 if(op1.isImmediate()) {
@@ -137,12 +162,23 @@ public class AssemblyGenerator {
                 // now op1 is variable, op2 is immediate
                 rvInsts.add(new RVInstruction("addi", List.of(
                         dst.toString(),
-                        Reg.getReg((IRVariable) op1).toString(),
+                        regs.getReg((IRVariable) op1).toString(),
                         op2.toString()
                 )));
+            } else if((kind == InstructionKind.SUB || kind == InstructionKind.LT)
+                    && inst.getLHS().isIRVariable() && inst.getRHS() instanceof IRImmediate imm
+                    && RangeAnalysis.fitsImm12(kind == InstructionKind.SUB ? -imm.getValue() : imm.getValue())) {
+                // SUB can be optimized to ADDI with the negated immediate, LT to SLTI
+                var dst = regs.getReg(inst.getResult());
+                var negate = kind == InstructionKind.SUB;
+                rvInsts.add(new RVInstruction(negate ? "addi" : "slti", List.of(
+                        dst.toString(),
+                        regs.getReg((IRVariable) inst.getLHS()).toString(),
+                        String.valueOf(negate ? -imm.getValue() : imm.getValue())
+                )));
             } else {
                 // SUB GT LT CMOV MUL ADD
-                var dst = Reg.getReg(inst.getResult());
+                var dst = regs.getReg(inst.getResult());
                 var op1 = inst.getOperands().get(0);
                 var op2 = inst.getOperands().get(1);
                 if(op1.isImmediate() && op2.isImmediate()) {
@@ -165,18 +201,18 @@ public class AssemblyGenerator {
                 } else {
                     IRVariable op1Tmp = null, op2Tmp = null;
                     if(op1.isImmediate()) {
-                        op1Tmp = IRVariable.temp();
+                        op1Tmp = context.newTemp();
                         rvInsts.add(new RVInstruction("li", List.of(
-                            Reg.getReg(op1Tmp).toString(),
+                            regs.getReg(op1Tmp).toString(),
                             op1.toString()
                         )));
                     } else {
                         op1Tmp = (IRVariable) op1;
                     }
                     if(op2.isImmediate()) {
-                        op2Tmp = IRVariable.temp();
+                        op2Tmp = context.newTemp();
                         rvInsts.add(new RVInstruction("li", List.of(
-                            Reg.getReg(op2Tmp).toString(),
+                            regs.getReg(op2Tmp).toString(),
                             op2.toString()
                         )));
                     } else {
@@ -184,13 +220,13 @@ public class AssemblyGenerator {
                     }
                     if(kind == InstructionKind.CMOV) {
                         rvInsts.add(new RVInstruction("beq", List.of(
-                            Reg.getReg(op1Tmp).toString(),
+                            regs.getReg(op1Tmp).toString(),
                             "x0",
                             "L" + i
                         )));
                         rvInsts.add(new RVInstruction("addi", List.of(
                             dst.toString(),
-                            Reg.getReg(op2Tmp).toString(),
+                            regs.getReg(op2Tmp).toString(),
                             "0"
                         )));
                         rvInsts.add(new RVInstruction("L" + i + ":", new ArrayList<>()));
@@ -204,29 +240,62 @@ public class AssemblyGenerator {
                         };
                         rvInsts.add(new RVInstruction(op, List.of(
                                 dst.toString(),
-                                Reg.getReg(op1Tmp).toString(),
-                                Reg.getReg(op2Tmp).toString()
+                                regs.getReg(op1Tmp).toString(),
+                                regs.getReg(op2Tmp).toString()
                         )));
                     }
                     if(op1.isImmediate()) {
-                        Reg.freeReg(op1Tmp);
+                        regs.freeReg(op1Tmp);
                     }
                     if(op2.isImmediate()) {
-                        Reg.freeReg(op2Tmp);
+                        regs.freeReg(op2Tmp);
                     }
                 }
             }
-            // free register
-            if (timeToUnbind.get(i) == null) {
-                continue;
-            }
-            for(IRVariable var: timeToUnbind.get(i)) {
-                Reg.freeReg(var);
+            freeDying(i);
+        }
+    }
+
+    /**
+     * 释放在第 i 条指令之后不再活跃的变量占用的寄存器
+     */
+    private void freeDying(int i) {
+        for(IRVariable var: liveness.dyingAt(i)) {
+            // a coalesced MOV source has already handed its register over
+            if(regs.hasReg(var)) {
+                regs.freeReg(var);
             }
         }
     }
 
 
+    private void move(Reg dst, IRValue src) {
+        if(src instanceof IRImmediate imm) {
+            rvInsts.add(new RVInstruction("li", List.of(
+                dst.toString(),
+                String.valueOf(imm.getValue())
+            )));
+        } else {
+            rvInsts.add(new RVInstruction("addi", List.of(
+                dst.toString(),
+                regs.getReg((IRVariable) src).toString(),
+                "0"
+            )));
+        }
+    }
+
+    private static boolean fitsImm12(IRValue value) {
+        return RangeAnalysis.fitsImm12(((IRImmediate) value).getValue());
+    }
+
+
+    /**
+     * @return 生成的汇编指令, 可交给 {@link RVSimulator} 执行
+     */
+    public List<RVInstruction> getRVInstructions() {
+        return rvInsts;
+    }
+
     /**
      * 输出汇编代码到文件
      *
@@ -11,6 +11,14 @@ public class RVInstruction {
         this.operands = operands;
     }
 
+    public String getOp() {
+        return op;
+    }
+
+    public List<String> getOperands() {
+        return operands;
+    }
+
     @Override
     public String toString() {
         var sb = new StringBuilder();
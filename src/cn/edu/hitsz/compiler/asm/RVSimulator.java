@@ -0,0 +1,322 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.ir.RangeAnalysis;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RV32IM 子集的模拟器, 在进程内执行 AssemblyGenerator 生成的汇编, 不依赖外部的 RARS
+ * <br>
+ * 支持 AssemblyGenerator 会生成的指令: li, addi, add, sub, mul, slt, slti, beq 以及标号. 寄存器可以写作 x0 到 x31,
+ * 也可以使用 ABI 名 (zero, ra, sp, t0, a0 等). 程序从第一条指令开始执行, 执行完最后一条指令后停止, 结果为 a0 的值,
+ * 与 scripts/check-result.py 中 RARS 的用法一致.
+ * <br>
+ * 执行时统计动态指令数与估计的周期数. 周期数按顺序执行的模型计算: 每条指令花费其延迟表中的周期数, 跳转的 beq 另加跳转代价.
+ * 延迟表可以通过 {@link #setLatency(String, int)} 与 {@link #setBranchPenalty(int)} 修改, 以便在本地比较后端优化的效果.
+ */
+public class RVSimulator {
+    /**
+     * @param instructions AssemblyGenerator 生成的指令序列
+     * @return 加载了该指令序列的模拟器
+     * @throws RuntimeException 含有不支持的指令, 非法的寄存器或立即数, 或未定义的标号
+     */
+    public static RVSimulator load(List<RVInstruction> instructions) {
+        return new RVSimulator(instructions);
+    }
+
+    /**
+     * @param lines 汇编代码的各行; 空行, 以 # 开头的注释与以 . 开头的伪指令 (如 .text) 被忽略
+     * @return 加载了该汇编代码的模拟器
+     * @throws RuntimeException 同 {@link #load(List)}
+     */
+    public static RVSimulator parse(List<String> lines) {
+        final var instructions = new ArrayList<RVInstruction>();
+        for (final var line : lines) {
+            var text = line;
+            final var comment = text.indexOf('#');
+            if (comment >= 0) {
+                text = text.substring(0, comment);
+            }
+            text = text.trim();
+            // 标号可以与指令写在同一行
+            final var colon = text.indexOf(':');
+            if (colon >= 0) {
+                instructions.add(new RVInstruction(text.substring(0, colon + 1).trim(), List.of()));
+                text = text.substring(colon + 1).trim();
+            }
+            if (text.isEmpty() || text.startsWith(".")) {
+                continue;
+            }
+
+            final var parts = text.split("[\\s,]+");
+            instructions.add(new RVInstruction(parts[0], List.of(parts).subList(1, parts.length)));
+        }
+        return new RVSimulator(instructions);
+    }
+
+    /**
+     * @param path 汇编文件路径, 如 {@link cn.edu.hitsz.compiler.utils.FilePathConfig#ASSEMBLY_LANGUAGE_PATH}
+     * @return 加载了该文件的模拟器
+     */
+    public static RVSimulator parseFile(String path) {
+        return parse(FileUtils.readLines(path));
+    }
+
+    /**
+     * 设置一种指令的延迟
+     *
+     * @param op     指令名, 如 mul
+     * @param cycles 周期数
+     * @return this, 以便链式调用
+     */
+    public RVSimulator setLatency(String op, int cycles) {
+        latencies[opcode(op)] = cycles;
+        return this;
+    }
+
+    /**
+     * 设置 beq 跳转时额外花费的周期数
+     *
+     * @param cycles 周期数
+     * @return this, 以便链式调用
+     */
+    public RVSimulator setBranchPenalty(int cycles) {
+        branchPenalty = cycles;
+        return this;
+    }
+
+    /**
+     * 从头执行程序, 所有寄存器的初值为 0
+     *
+     * @return 执行结束时 a0 的值
+     * @throws RuntimeException 执行的指令数超过 {@link #MAX_STEPS}, 多半是程序中有死循环
+     */
+    public int run() {
+        Arrays.fill(registers, 0);
+        instructionCount = 0;
+        cycles = 0;
+        Arrays.fill(counts, 0);
+
+        var pc = 0;
+        while (pc < ops.length) {
+            if (instructionCount == MAX_STEPS) {
+                throw new RuntimeException("Exceeded %d steps at instruction %d".formatted(MAX_STEPS, pc));
+            }
+            final int op = ops[pc], rd = rds[pc], rs1 = rs1s[pc], rs2 = rs2s[pc], imm = imms[pc];
+            instructionCount++;
+            counts[op]++;
+            cycles += latencies[op];
+            var next = pc + 1;
+            switch (op) {
+                case OP_LI -> write(rd, imm);
+                case OP_ADDI -> write(rd, registers[rs1] + imm);
+                case OP_ADD -> write(rd, registers[rs1] + registers[rs2]);
+                case OP_SUB -> write(rd, registers[rs1] - registers[rs2]);
+                case OP_MUL -> write(rd, registers[rs1] * registers[rs2]);
+                case OP_SLT -> write(rd, registers[rs1] < registers[rs2] ? 1 : 0);
+                case OP_SLTI -> write(rd, registers[rs1] < imm ? 1 : 0);
+                case OP_BEQ -> {
+                    if (registers[rs1] == registers[rs2]) {
+                        next = imm;
+                        cycles += branchPenalty;
+                    }
+                }
+                default -> throw new RuntimeException("Unknown opcode: " + op);
+            }
+            pc = next;
+        }
+        return registers[A0];
+    }
+
+    /**
+     * @return 上一次 run 执行的指令数
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return 上一次 run 按延迟表估计的周期数
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return 上一次 run 中每种指令的执行次数, 按 li, addi, add, sub, mul, slt, slti, beq 的顺序, 未执行的指令不列出
+     */
+    public Map<String, Long> getCounts() {
+        final var result = new LinkedHashMap<String, Long>();
+        for (int op = 0; op < OP_NAMES.size(); op++) {
+            if (counts[op] > 0) {
+                result.put(OP_NAMES.get(op), counts[op]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param index 寄存器编号, 0 到 31
+     * @return 上一次 run 结束时该寄存器的值
+     */
+    public int getRegister(int index) {
+        return registers[index];
+    }
+
+    //============================== 实现 ==============================
+
+    /**
+     * 一次 run 最多执行的指令数
+     */
+    public static final long MAX_STEPS = 1L << 30;
+
+    private static final int A0 = 10;
+    private static final List<String> OP_NAMES = List.of("li", "addi", "add", "sub", "mul", "slt", "slti", "beq");
+    private static final int OP_LI = 0;
+    private static final int OP_ADDI = 1;
+    private static final int OP_ADD = 2;
+    private static final int OP_SUB = 3;
+    private static final int OP_MUL = 4;
+    private static final int OP_SLT = 5;
+    private static final int OP_SLTI = 6;
+    private static final int OP_BEQ = 7;
+
+    private static final Map<String, Integer> ABI_NAMES = abiNames();
+
+    // 预解码后的程序: 每条指令的操作码, 目的寄存器, 两个源寄存器与立即数 (beq 的立即数是跳转目标的下标)
+    private final int[] ops;
+    private final int[] rds;
+    private final int[] rs1s;
+    private final int[] rs2s;
+    private final int[] imms;
+    private final int[] registers = new int[32];
+
+    // 默认的延迟: 一般的整数运算 1 个周期, 乘法 3 个周期, 跳转的分支另加 2 个周期
+    private final int[] latencies = {1, 1, 1, 1, 3, 1, 1, 1};
+    private int branchPenalty = 2;
+
+    private final long[] counts = new long[OP_NAMES.size()];
+    private long instructionCount = 0;
+    private long cycles = 0;
+
+    private RVSimulator(List<RVInstruction> instructions) {
+        // 先收集标号, 标号指向其后的第一条指令
+        final var labels = new HashMap<String, Integer>();
+        final var body = new ArrayList<RVInstruction>();
+        for (final var instruction : instructions) {
+            if (instruction.getOp().endsWith(":")) {
+                final var label = instruction.getOp().substring(0, instruction.getOp().length() - 1);
+                if (labels.put(label, body.size()) != null) {
+                    throw new RuntimeException("Duplicate label: " + label);
+                }
+            } else {
+                body.add(instruction);
+            }
+        }
+
+        final var size = body.size();
+        ops = new int[size];
+        rds = new int[size];
+        rs1s = new int[size];
+        rs2s = new int[size];
+        imms = new int[size];
+        for (int i = 0; i < size; i++) {
+            final var instruction = body.get(i);
+            final var op = opcode(instruction.getOp());
+            final var operands = instruction.getOperands();
+            final var expected = op == OP_LI ? 2 : 3;
+            if (operands.size() != expected) {
+                throw new RuntimeException("Wrong operand count: " + instruction);
+            }
+
+            ops[i] = op;
+            switch (op) {
+                case OP_LI -> {
+                    rds[i] = register(operands.get(0));
+                    imms[i] = immediate(operands.get(1), instruction, false);
+                }
+                case OP_ADDI, OP_SLTI -> {
+                    rds[i] = register(operands.get(0));
+                    rs1s[i] = register(operands.get(1));
+                    imms[i] = immediate(operands.get(2), instruction, true);
+                }
+                case OP_BEQ -> {
+                    rs1s[i] = register(operands.get(0));
+                    rs2s[i] = register(operands.get(1));
+                    final var target = labels.get(operands.get(2));
+                    if (target == null) {
+                        throw new RuntimeException("Undefined label: " + operands.get(2));
+                    }
+                    imms[i] = target;
+                }
+                default -> {
+                    rds[i] = register(operands.get(0));
+                    rs1s[i] = register(operands.get(1));
+                    rs2s[i] = register(operands.get(2));
+                }
+            }
+        }
+    }
+
+    private void write(int rd, int value) {
+        // x0 恒为 0
+        if (rd != 0) {
+            registers[rd] = value;
+        }
+    }
+
+    private static int opcode(String op) {
+        final var index = OP_NAMES.indexOf(op);
+        if (index < 0) {
+            throw new RuntimeException("Unsupported instruction: " + op);
+        }
+        return index;
+    }
+
+    private static int register(String name) {
+        final var index = ABI_NAMES.get(name);
+        if (index == null) {
+            throw new RuntimeException("Unknown register: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * @param narrow 是否是 addi/slti 的 12 位立即数字段; li 是伪指令, 可以是任意 32 位的值
+     */
+    private static int immediate(String text, RVInstruction instruction, boolean narrow) {
+        final int value;
+        try {
+            value = (int) Long.decode(text).longValue();
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid immediate in " + instruction, e);
+        }
+        if (narrow && !RangeAnalysis.fitsImm12(value)) {
+            throw new RuntimeException("Immediate out of 12-bit range in " + instruction);
+        }
+        return value;
+    }
+
+    private static Map<String, Integer> abiNames() {
+        final var names = new HashMap<String, Integer>();
+        for (int i = 0; i < 32; i++) {
+            names.put("x" + i, i);
+        }
+        final var abi = List.of(
+            "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
+            "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
+            "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
+            "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6");
+        for (int i = 0; i < 32; i++) {
+            names.put(abi.get(i), i);
+        }
+        names.put("fp", 8);
+        return names;
+    }
+}
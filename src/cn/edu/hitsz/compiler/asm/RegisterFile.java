@@ -0,0 +1,84 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+
+import java.util.Arrays;
+
+/**
+ * 一次编译中寄存器与 IR 变量的绑定关系
+ * <br>
+ * 每个 {@link cn.edu.hitsz.compiler.CompilationContext} 持有自己的一份, 因此同时进行的多次编译不会争抢同一组寄存器.
+ * 其中的变量都应来自同一个上下文的变量池, 绑定关系直接以变量的编号为下标存放.
+ */
+public class RegisterFile {
+    // 以寄存器编号为下标的绑定变量, 以及以变量编号 (见 IRVariable#getId) 为下标的绑定寄存器
+    private final IRVariable[] reg2var = new IRVariable[32];
+    private Reg[] var2reg = new Reg[64];
+
+    private void bind(Reg reg, IRVariable var) {
+        assert reg2var[reg.getIndex()] == null;
+        assert regOf(var) == null;
+        if (var.getId() >= var2reg.length) {
+            var2reg = Arrays.copyOf(var2reg, Math.max(var2reg.length * 2, var.getId() + 1));
+        }
+        reg2var[reg.getIndex()] = var;
+        var2reg[var.getId()] = reg;
+    }
+    private void unbind(Reg reg, IRVariable var) {
+        reg2var[reg.getIndex()] = null;
+        var2reg[var.getId()] = null;
+    }
+
+    private Reg regOf(IRVariable var) {
+        return var.getId() < var2reg.length ? var2reg[var.getId()] : null;
+    }
+
+    /**
+     * @param var IR 变量
+     * @return 该变量所在的寄存器; 若它尚未被分配寄存器, 则为它绑定第一个空闲的寄存器
+     * @throws RuntimeException 没有空闲的寄存器
+     */
+    public Reg getReg(IRVariable var) {
+        final var bound = regOf(var);
+        if (bound != null) {
+            return bound;
+        }
+        for (Reg reg : Reg.availableRegs) {
+            if (reg2var[reg.getIndex()] == null) {
+                bind(reg, var);
+                return reg;
+            }
+        }
+        throw new RuntimeException("No available register");
+    }
+
+    /**
+     * @return 该变量当前是否占用着寄存器
+     */
+    public boolean hasReg(IRVariable var) {
+        return regOf(var) != null;
+    }
+
+    /**
+     * 把 from 占用的寄存器直接转交给 to, 用于合并 MOV: 若 MOV 的源变量在此之后不再活跃, 目标变量可以沿用它的寄存器而无需复制
+     *
+     * @param from 已被分配寄存器的 IR 变量, 之后不再占用寄存器
+     * @param to   尚未被分配寄存器的 IR 变量
+     * @return 转交的寄存器
+     */
+    public Reg rename(IRVariable from, IRVariable to) {
+        assert hasReg(from) && !hasReg(to);
+        final var reg = regOf(from);
+        unbind(reg, from);
+        bind(reg, to);
+        return reg;
+    }
+
+    /**
+     * @param var 已被分配寄存器的 IR 变量, 释放它占用的寄存器
+     */
+    public void freeReg(IRVariable var) {
+        assert regOf(var) != null;
+        unbind(regOf(var), var);
+    }
+}
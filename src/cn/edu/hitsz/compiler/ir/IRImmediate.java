@@ -5,6 +5,9 @@ package cn.edu.hitsz.compiler.ir;
  */
 public class IRImmediate implements IRValue {
     public static IRImmediate of(int value) {
+        if (CACHE_LOW <= value && value <= CACHE_HIGH) {
+            return cache[value - CACHE_LOW];
+        }
         return new IRImmediate(value);
     }
 
@@ -19,7 +22,28 @@ public class IRImmediate implements IRValue {
         return Integer.toString(value);
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IRImmediate immediate && value == immediate.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(value);
+    }
+
     private IRImmediate(int value) {
         this.value = value;
     }
+
+    // 与 Integer.valueOf 类似, 缓存常用的小立即数, 免得每个常量都分配一个新对象
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IRImmediate[] cache = new IRImmediate[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new IRImmediate(CACHE_LOW + i);
+        }
+    }
 }
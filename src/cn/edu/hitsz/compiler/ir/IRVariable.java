@@ -4,28 +4,53 @@ package cn.edu.hitsz.compiler.ir;
  * IR 中的 "变量"
  * <br>
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
- * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
+ * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*".
+ * 在 SSA 形式中, 同一个变量的不同定义被区分为不同的版本, 其 name 为原本的 name 加上 ".版本号" 的后缀.
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * IR 变量由一次编译的 {@link IRVariablePool} 创建并驻留, 同一个池中的等价性由 name 唯一确定, 且就是引用相等.
  */
 public class IRVariable implements IRValue {
     /**
-     * @param name 源语言中变量的名字
-     * @return 一个对应于源语言中具体变量的 IRVariable
+     * @param base    原本的变量, 不能已经带有版本
+     * @param version 版本号, 从 1 开始
+     * @return base 的第 version 个版本, 与 base 属于同一个池
      */
-    public static IRVariable named(String name) {
-        return new IRVariable(name);
+    public static IRVariable versioned(IRVariable base, int version) {
+        assert !base.isVersioned() && version > 0;
+        return base.pool.intern(base.name + "." + version);
+    }
+
+    public String getName() {
+        return name;
     }
 
     /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * @return 变量在其所属的池中的编号, 从 0 开始且稠密, 可以作为数组下标
      */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    public int getId() {
+        return id;
     }
 
-    public String getName() {
-        return name;
+    public IRVariablePool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return 是否是 SSA 形式中某个变量的版本
+     */
+    public boolean isVersioned() {
+        return name.indexOf('.') >= 0;
+    }
+
+    /**
+     * @return 去掉版本后缀的原变量; 若本身不带版本则返回自身
+     */
+    public IRVariable getBase() {
+        if (base == null) {
+            final var dot = name.indexOf('.');
+            base = dot < 0 ? this : pool.intern(name.substring(0, dot));
+        }
+        return base;
     }
 
     public boolean isTemp() {
@@ -41,20 +66,21 @@ public class IRVariable implements IRValue {
         return name;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
-    }
+    // 同一个池中同名的变量只有一个实例, equals 即为 Object 的引用相等
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return id;
     }
 
-    private IRVariable(String name) {
+    IRVariable(IRVariablePool pool, int id, String name) {
+        this.pool = pool;
+        this.id = id;
         this.name = name;
     }
 
+    private final IRVariablePool pool;
+    private final int id;
     private final String name;
-    private static int count = 0;
+    private IRVariable base = null;
 }
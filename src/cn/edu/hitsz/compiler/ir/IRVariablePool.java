@@ -0,0 +1,72 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次编译中所有 IRVariable 的驻留池
+ * <br>
+ * 同一个池中, 同名的变量只有一个实例, 并按创建顺序得到从 0 开始的稠密编号 (见 {@link IRVariable#getId()}).
+ * 因此变量的等价性就是引用相等, 以变量为键的附加信息也可以直接存放在以编号为下标的数组中.
+ * <br>
+ * 每个 {@link cn.edu.hitsz.compiler.CompilationContext} 持有自己的一个池; 不同池中的变量即使同名也互不相等, 不应混用.
+ * 池不是线程安全的, 与上下文一样只应由一个线程使用.
+ */
+public final class IRVariablePool {
+    /**
+     * @param name 源语言中变量的名字
+     * @return 一个对应于源语言中具体变量的 IRVariable
+     */
+    public IRVariable named(String name) {
+        return intern(name);
+    }
+
+    /**
+     * 临时变量的编号由调用者分配, 一次编译中的编号见 {@link cn.edu.hitsz.compiler.CompilationContext#newTemp()}
+     *
+     * @param number 临时变量的编号
+     * @return 一个对应于源语言中的临时变量的 IRVariable, 名为 "$number"
+     */
+    public IRVariable temp(int number) {
+        return intern("$" + number);
+    }
+
+    /**
+     * @param name 变量的名字, 即 toString 的结果, 可以是临时变量或带版本的变量
+     * @return 以该名字还原的 IRVariable, 用于读取保存下来的 IR
+     */
+    public IRVariable fromName(String name) {
+        return intern(name);
+    }
+
+    /**
+     * @return 池中变量的个数, 所有变量的编号都小于它
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    /**
+     * @return 编号为 id 的变量
+     */
+    public IRVariable get(int id) {
+        return variables.get(id);
+    }
+
+    IRVariable intern(String name) {
+        final var existing = byName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        final var variable = new IRVariable(this, variables.size(), name);
+        variables.add(variable);
+        byName.put(name, variable);
+        return variable;
+    }
+
+    private final Map<String, IRVariable> byName = new HashMap<>();
+    private final List<IRVariable> variables = new ArrayList<>();
+}
@@ -1,9 +1,9 @@
 package cn.edu.hitsz.compiler.ir;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -57,6 +57,22 @@ public class Instruction {
         return new Instruction(InstructionKind.RET, null, List.of(returnValue));
     }
 
+    /**
+     * 构造任意种类的指令, 供优化中按种类统一改写指令时使用
+     *
+     * @param kind     指令种类
+     * @param result   返回值, 对 RET 必须为 null
+     * @param operands 参数, 个数必须与种类相符
+     * @return 新的指令
+     */
+    public static Instruction create(InstructionKind kind, IRVariable result, List<IRValue> operands) {
+        if (kind.hasResult() == (result == null) || operands.size() != kind.getOperandCount()) {
+            throw new RuntimeException("Illegal instruction shape for " + kind);
+        }
+
+        return new Instruction(kind, result, List.copyOf(operands));
+    }
+
 
     //============================== 不同种类 IR 的参数 getter ==============================
     public InstructionKind getKind() {
@@ -64,27 +80,27 @@ public class Instruction {
     }
 
     public IRVariable getResult() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV, InstructionKind.GT, InstructionKind.LT, InstructionKind.CMOV));
+        ensureKindMatch(RESULT_KINDS);
         return result;
     }
 
     public IRValue getLHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.GT, InstructionKind.LT, InstructionKind.CMOV));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(0);
     }
 
     public IRValue getRHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.GT, InstructionKind.LT, InstructionKind.CMOV));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(1);
     }
 
     public IRValue getFrom() {
-        ensureKindMatch(Set.of(InstructionKind.MOV));
+        ensureKindMatch(MOV_KINDS);
         return operands.get(0);
     }
 
     public IRValue getReturnValue() {
-        ensureKindMatch(Set.of(InstructionKind.RET));
+        ensureKindMatch(RET_KINDS);
         return operands.get(0);
     }
 
@@ -99,7 +115,24 @@ public class Instruction {
     }
 
     public List<IRValue> getOperands() {
-        return Collections.unmodifiableList(operands);
+        // operands 总是由 List.of 构造的, 本身就不可修改, 不必每次再包装一层
+        return operands;
+    }
+
+    /**
+     * @param newResult 新的返回值, 对 RET 必须为 null
+     * @param mapping   对每个参数的替换
+     * @return 种类相同, 返回值与参数被替换后的指令; 若没有任何变化则返回自身
+     */
+    public Instruction rewrite(IRVariable newResult, UnaryOperator<IRValue> mapping) {
+        var changed = !Objects.equals(result, newResult);
+        final var newOperands = new IRValue[operands.size()];
+        for (int i = 0; i < newOperands.length; i++) {
+            newOperands[i] = mapping.apply(operands.get(i));
+            changed |= !newOperands[i].equals(operands.get(i));
+        }
+
+        return changed ? create(kind, newResult, List.of(newOperands)) : this;
     }
 
     private Instruction(InstructionKind kind, IRVariable result, List<IRValue> operands) {
@@ -112,10 +145,19 @@ public class Instruction {
     private final IRVariable result;
     private final List<IRValue> operands;
 
-    private void ensureKindMatch(Set<InstructionKind> targetKinds) {
+    // 各个 getter 接受的种类的掩码, 预先算好以免每次访问参数时都构造一个集合
+    private static final int RESULT_KINDS = InstructionKind.maskOf(
+        InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV, InstructionKind.GT, InstructionKind.LT, InstructionKind.CMOV);
+    private static final int BINARY_KINDS = InstructionKind.maskOf(
+        InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.GT, InstructionKind.LT, InstructionKind.CMOV);
+    private static final int MOV_KINDS = InstructionKind.MOV.bit();
+    private static final int RET_KINDS = InstructionKind.RET.bit();
+
+    private void ensureKindMatch(int targetKinds) {
         final var kind = getKind();
-        if (!targetKinds.contains(kind)) {
-            final var acceptKindsString = targetKinds.stream()
+        if ((kind.bit() & targetKinds) == 0) {
+            final var acceptKindsString = Arrays.stream(InstructionKind.values())
+                .filter(acceptKind -> (acceptKind.bit() & targetKinds) != 0)
                 .map(InstructionKind::toString)
                 .collect(Collectors.joining(","));
 
@@ -26,4 +26,37 @@ public enum InstructionKind {
     public boolean isReturn() {
         return this == RET;
     }
+
+    /**
+     * @return IR 是否有返回值 (getResult 是否合法)
+     */
+    public boolean hasResult() {
+        return this != RET;
+    }
+
+    /**
+     * @return IR 的参数个数
+     */
+    public int getOperandCount() {
+        return isBinary() ? 2 : 1;
+    }
+
+    /**
+     * @return 该种类在种类掩码中对应的位
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param kinds 若干种类
+     * @return 这些种类组成的种类掩码, 用于不分配对象地判断某个种类是否属于一个集合
+     */
+    public static int maskOf(InstructionKind... kinds) {
+        int mask = 0;
+        for (final var kind : kinds) {
+            mask |= kind.bit();
+        }
+        return mask;
+    }
 }
@@ -0,0 +1,306 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * IR 上的活跃变量分析
+ * <br>
+ * 指令序列先被打包为 {@link PackedIR}, 变量以其稠密的槽位编号. IR 是直线代码, 指令 i 的后继只有 i + 1 (RET 没有后继),
+ * 所以从后往前走一遍即得到不动点. CMOV 隐式地读取自己的返回值, 所以它不会结束返回值的活跃区间.
+ * <br>
+ * 分析的结果是每个定义的活跃区间: 同一个变量被多次定义时, 每次定义各自得到一个区间, 两个区间之间该变量不占用任何资源.
+ * 各指令处的活跃集合由区间按需得出, 不为每条指令保存一个集合, 所以占用的内存与指令条数成正比.
+ * 供寄存器分配, 死代码消除与指令调度等使用.
+ */
+public final class Liveness {
+    /**
+     * 活跃区间的起点: 该值来自程序开始时 (在定义之前被使用的变量)
+     */
+    public static final int ENTRY = -1;
+
+    /**
+     * 一个定义的活跃区间. 变量在 start 之后 (不含) 到 end (含) 之间活跃
+     *
+     * @param variable 变量
+     * @param start    定义该值的指令下标, 或 ENTRY; 对 RET 之后的不可达代码中在定义之前被使用的变量, 为该 RET 的下标
+     * @param end      最后一条读取该值的指令下标; 若该值从未被读取则等于 start
+     */
+    public record Interval(IRVariable variable, int start, int end) {
+    }
+
+    /**
+     * @param instructions 指令序列
+     * @return 指令序列的活跃变量分析结果
+     */
+    public static Liveness analyze(List<Instruction> instructions) {
+        return new Liveness(PackedIR.pack(instructions), false);
+    }
+
+    /**
+     * 强活跃变量分析: 返回值不活跃的指令 (死存储) 不会使其参数活跃, 因此一整条死掉的计算链在一遍中就能全部识别出来
+     *
+     * @param instructions 指令序列
+     * @return 指令序列的强活跃变量分析结果
+     */
+    public static Liveness analyzeStrong(List<Instruction> instructions) {
+        return new Liveness(PackedIR.pack(instructions), true);
+    }
+
+    /**
+     * @return 分析所用的打包后的指令序列, 其槽位即 BitSet 的下标
+     */
+    public PackedIR getIR() {
+        return ir;
+    }
+
+    /**
+     * 按需由活跃区间计算, 代价与区间的个数成正比; 只需查询个别变量时应使用 {@link #isLiveIn(int, IRVariable)}
+     *
+     * @return 指令执行前活跃的变量的槽位集合
+     */
+    public BitSet liveIn(int index) {
+        final var result = new BitSet(ir.variableCount());
+        for (final var interval : intervals) {
+            if (interval.start() < index && index <= interval.end()) {
+                result.set(ir.slotOf(interval.variable()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按需由活跃区间计算, 代价与区间的个数成正比; 只需查询个别变量时应使用 {@link #isLiveOut(int, IRVariable)}
+     *
+     * @return 指令执行后活跃的变量的槽位集合
+     */
+    public BitSet liveOut(int index) {
+        final var result = new BitSet(ir.variableCount());
+        if (ir.kind(index).isReturn()) {
+            return result;
+        }
+        for (final var interval : intervals) {
+            if (interval.start() <= index && index < interval.end()) {
+                result.set(ir.slotOf(interval.variable()));
+            }
+        }
+        return result;
+    }
+
+    public boolean isLiveIn(int index, IRVariable variable) {
+        final var slot = ir.slotOf(variable);
+        if (slot == PackedIR.NO_SLOT) {
+            return false;
+        }
+        // 同一变量的区间按起点排序且互不重叠, 只有起点在 index 之前的最后一个区间可能包含它
+        final var interval = lastStartingBefore(slot, index - 1);
+        return interval != null && index <= interval.end();
+    }
+
+    public boolean isLiveOut(int index, IRVariable variable) {
+        final var slot = ir.slotOf(variable);
+        if (slot == PackedIR.NO_SLOT || ir.kind(index).isReturn()) {
+            return false;
+        }
+        final var interval = lastStartingBefore(slot, index);
+        return interval != null && index < interval.end();
+    }
+
+    /**
+     * @return 同时活跃的变量数的最大值, 即不溢出时所需的寄存器数的下界
+     */
+    public int maxLive() {
+        return maxLive;
+    }
+
+    /**
+     * @return 所有定义的活跃区间, 按结束位置排序
+     */
+    public List<Interval> getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * @return 在该指令处结束的活跃区间, 即该指令之后不再需要的值
+     */
+    public List<Interval> endingAt(int index) {
+        final var from = firstEndingAt[index];
+        final var to = index + 1 < firstEndingAt.length ? firstEndingAt[index + 1] : intervals.size();
+        return intervals.subList(from, to);
+    }
+
+    /**
+     * 在该指令之后不再活跃的变量. 与 {@link #endingAt(int)} 不同, 若该指令结束了一个区间又开始了同一变量的新区间 (如 a = a + 1),
+     * 而新值仍然活跃, 该变量不在其中
+     *
+     * @return 在该指令处死去的变量, 可以在该指令之后释放它们占用的寄存器
+     */
+    public List<IRVariable> dyingAt(int index) {
+        final var result = new ArrayList<IRVariable>();
+        for (final var interval : endingAt(index)) {
+            final var variable = interval.variable();
+            if (!isLiveOut(index, variable) && !result.contains(variable)) {
+                result.add(variable);
+            }
+        }
+        return result;
+    }
+
+    //============================== 实现 ==============================
+
+    private static final int NONE = -2;
+
+    private final PackedIR ir;
+    private final int maxLive;
+    private final List<Interval> intervals;
+    // intervals 中第一个在各下标处结束的区间的位置
+    private final int[] firstEndingAt;
+    // 按槽位分组, 组内按起点排序的区间: 槽位 s 的区间是 bySlot[slotBegin[s]] 到 bySlot[slotBegin[s + 1] - 1]
+    private final Interval[] bySlot;
+    private final int[] slotBegin;
+
+    private Liveness(PackedIR ir, boolean strong) {
+        this.ir = ir;
+        final var size = ir.size();
+
+        // 从后往前走一遍, 只维护当前的活跃集合及其大小; 强分析中还记下哪些指令的返回值不活跃 (死存储)
+        final var live = new BitSet(ir.variableCount());
+        final var dead = new BitSet(size);
+        var count = 0;
+        var max = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            final var kind = ir.kind(i);
+            if (kind.isReturn()) {
+                live.clear();
+                count = 0;
+            }
+
+            if (kind.hasResult()) {
+                if (strong && !live.get(ir.result(i))) {
+                    dead.set(i);
+                    max = Math.max(max, count);
+                    continue;
+                }
+                if (kind != InstructionKind.CMOV && live.get(ir.result(i))) {
+                    live.clear(ir.result(i));
+                    count--;
+                }
+            }
+            if (!ir.isLhsImmediate(i) && !live.get(ir.lhs(i))) {
+                live.set(ir.lhs(i));
+                count++;
+            }
+            if (kind.getOperandCount() == 2 && !ir.isRhsImmediate(i) && !live.get(ir.rhs(i))) {
+                live.set(ir.rhs(i));
+                count++;
+            }
+            max = Math.max(max, count);
+        }
+        maxLive = max;
+
+        final var built = buildIntervals(dead);
+        built.sort((a, b) -> Integer.compare(a.end(), b.end()));
+        intervals = List.copyOf(built);
+        firstEndingAt = new int[size];
+        var position = 0;
+        for (int i = 0; i < size; i++) {
+            while (position < intervals.size() && intervals.get(position).end() < i) {
+                position++;
+            }
+            firstEndingAt[i] = position;
+        }
+
+        // 计数排序: 先按起点排序再稳定地按槽位分组
+        final var slots = ir.variableCount();
+        slotBegin = new int[slots + 1];
+        for (final var interval : intervals) {
+            slotBegin[ir.slotOf(interval.variable()) + 1]++;
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            slotBegin[slot + 1] += slotBegin[slot];
+        }
+        final var byStart = new ArrayList<>(intervals);
+        byStart.sort((a, b) -> Integer.compare(a.start(), b.start()));
+        bySlot = new Interval[intervals.size()];
+        final var next = Arrays.copyOf(slotBegin, slots);
+        for (final var interval : byStart) {
+            bySlot[next[ir.slotOf(interval.variable())]++] = interval;
+        }
+    }
+
+    /**
+     * @return 该槽位的区间中起点不超过 index 的最后一个, 没有则为 null
+     */
+    private Interval lastStartingBefore(int slot, int index) {
+        var low = slotBegin[slot];
+        var high = slotBegin[slot + 1];
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (bySlot[middle].start() <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == slotBegin[slot] ? null : bySlot[low - 1];
+    }
+
+    /**
+     * 从前往后走一遍建立区间, 跳过强分析中的死存储: 它们既不读取参数也不开始新的区间
+     */
+    private List<Interval> buildIntervals(BitSet dead) {
+        final var result = new ArrayList<Interval>();
+        final var start = new int[ir.variableCount()];
+        final var lastRead = new int[ir.variableCount()];
+        Arrays.fill(start, NONE);
+        // 在定义之前被使用的变量的区间起点: 程序开始, 或上一条 RET
+        var entry = ENTRY;
+
+        for (int i = 0; i < ir.size(); i++) {
+            if (dead.get(i)) {
+                continue;
+            }
+            final var kind = ir.kind(i);
+            if (!ir.isLhsImmediate(i)) {
+                read(ir.lhs(i), i, entry, start, lastRead);
+            }
+            if (kind.getOperandCount() == 2 && !ir.isRhsImmediate(i)) {
+                read(ir.rhs(i), i, entry, start, lastRead);
+            }
+            if (kind == InstructionKind.CMOV) {
+                read(ir.result(i), i, entry, start, lastRead);
+            } else if (kind.hasResult()) {
+                final var slot = ir.result(i);
+                close(slot, start, lastRead, result);
+                start[slot] = i;
+                lastRead[slot] = i;
+            } else {
+                // RET 之后没有后继, 所有区间都在此结束
+                for (int slot = 0; slot < start.length; slot++) {
+                    close(slot, start, lastRead, result);
+                }
+                entry = i;
+            }
+        }
+        for (int slot = 0; slot < start.length; slot++) {
+            close(slot, start, lastRead, result);
+        }
+        return result;
+    }
+
+    private static void read(int slot, int index, int entry, int[] start, int[] lastRead) {
+        if (start[slot] == NONE) {
+            start[slot] = entry;
+        }
+        lastRead[slot] = index;
+    }
+
+    private void close(int slot, int[] start, int[] lastRead, List<Interval> result) {
+        if (start[slot] != NONE) {
+            result.add(new Interval(ir.variable(slot), start[slot], lastRead[slot]));
+            start[slot] = NONE;
+        }
+    }
+}
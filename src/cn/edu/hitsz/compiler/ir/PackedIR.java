@@ -0,0 +1,169 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * 紧凑存储的 IR 指令序列
+ * <br>
+ * 每条指令在几个 int 数组中占据同一个下标: 种类, 返回值与两个参数. IR 变量被编号为从 0 开始的稠密槽位 (slot),
+ * 参数中的立即数直接内联存放在参数数组中, 由 flags 中的位区分该参数是槽位还是立即数. 需要遍历大量指令的代码
+ * 只读这几个数组即可, 不会分配任何对象.
+ * <br>
+ * 对于 MOV 与 RET 这两种只有一个参数的指令, 其唯一的参数 (from 或 returnValue) 存放在 lhs 的位置.
+ * <br>
+ * 打包后不再保留原来的 Instruction 对象. 它仍是一个 {@code List<Instruction>}, 但 get 每次都由数组重新构造一条等价的 Instruction,
+ * 只适合偶尔取用 (如报告错误). 目前只有 Liveness, RangeAnalysis, IREmulator, IRCompiler 与 Serialization 使用打包的形式,
+ * 各个优化遍仍然直接处理 {@code List<Instruction>}.
+ */
+public final class PackedIR extends AbstractList<Instruction> implements RandomAccess {
+    /**
+     * 没有返回值的指令 (RET) 的返回值槽位
+     */
+    public static final int NO_SLOT = -1;
+
+    /**
+     * 将指令序列打包, 为其中出现的 IR 变量按首次出现的顺序分配槽位
+     *
+     * @param instructions 指令序列
+     * @return 打包后的指令序列
+     */
+    public static PackedIR pack(List<Instruction> instructions) {
+        return new PackedIR(instructions);
+    }
+
+    /**
+     * @return 由数组重新构造的第 index 条指令, 每次调用都会分配新的对象
+     */
+    @Override
+    public Instruction get(int index) {
+        final var kind = kind(index);
+        final var result = results[index] == NO_SLOT ? null : variables.get(results[index]);
+        final var operands = kind.getOperandCount() == 2
+            ? List.of(decode(lhs[index], isLhsImmediate(index)), decode(rhs[index], isRhsImmediate(index)))
+            : List.of(decode(lhs[index], isLhsImmediate(index)));
+        return Instruction.create(kind, result, operands);
+    }
+
+    @Override
+    public int size() {
+        return kinds.length;
+    }
+
+    public InstructionKind kind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    /**
+     * @return 返回值的槽位, 对 RET 为 NO_SLOT
+     */
+    public int result(int index) {
+        return results[index];
+    }
+
+    public boolean isLhsImmediate(int index) {
+        return (flags[index] & LHS_IMMEDIATE) != 0;
+    }
+
+    public boolean isRhsImmediate(int index) {
+        return (flags[index] & RHS_IMMEDIATE) != 0;
+    }
+
+    /**
+     * @return 第一个参数: 若为立即数则是立即数的值, 否则是变量的槽位
+     */
+    public int lhs(int index) {
+        return lhs[index];
+    }
+
+    /**
+     * @return 第二个参数: 若为立即数则是立即数的值, 否则是变量的槽位. 只对二元指令有意义
+     */
+    public int rhs(int index) {
+        return rhs[index];
+    }
+
+    /**
+     * @return 槽位的数量, 即指令序列中出现过的不同 IR 变量的个数
+     */
+    public int variableCount() {
+        return variables.size();
+    }
+
+    /**
+     * @return 槽位对应的 IR 变量
+     */
+    public IRVariable variable(int slot) {
+        return variables.get(slot);
+    }
+
+    /**
+     * @return IR 变量的槽位, 若该变量没有在指令序列中出现过则返回 NO_SLOT
+     */
+    public int slotOf(IRVariable variable) {
+        return slots.getOrDefault(variable, NO_SLOT);
+    }
+
+    //============================== 实现 ==============================
+
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+    private static final int LHS_IMMEDIATE = 1;
+    private static final int RHS_IMMEDIATE = 2;
+
+    private final int[] kinds;
+    private final int[] results;
+    private final int[] flags;
+    private final int[] lhs;
+    private final int[] rhs;
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<IRVariable, Integer> slots = new HashMap<>();
+
+    private PackedIR(List<Instruction> source) {
+        final var size = source.size();
+        kinds = new int[size];
+        results = new int[size];
+        flags = new int[size];
+        lhs = new int[size];
+        rhs = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            final var instruction = source.get(i);
+            final var kind = instruction.getKind();
+            final var operands = instruction.getOperands();
+            kinds[i] = kind.ordinal();
+            results[i] = kind.hasResult() ? slotOrAdd(instruction.getResult()) : NO_SLOT;
+
+            lhs[i] = encode(operands.get(0));
+            flags[i] |= operands.get(0).isImmediate() ? LHS_IMMEDIATE : 0;
+            if (kind.getOperandCount() == 2) {
+                rhs[i] = encode(operands.get(1));
+                flags[i] |= operands.get(1).isImmediate() ? RHS_IMMEDIATE : 0;
+            }
+        }
+    }
+
+    private int encode(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            return immediate.getValue();
+        } else if (value instanceof IRVariable variable) {
+            return slotOrAdd(variable);
+        } else {
+            throw new RuntimeException("Unknown IR value type");
+        }
+    }
+
+    private IRValue decode(int operand, boolean immediate) {
+        return immediate ? IRImmediate.of(operand) : variables.get(operand);
+    }
+
+    private int slotOrAdd(IRVariable variable) {
+        return slots.computeIfAbsent(variable, newVariable -> {
+            variables.add(newVariable);
+            return variables.size() - 1;
+        });
+    }
+}
@@ -0,0 +1,205 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.List;
+
+/**
+ * IR 上的值域 (区间) 分析
+ * <br>
+ * 按指令顺序走一遍, 为每个定义计算其值的保守区间 [min, max]: 立即数的区间只含它自己, 在定义之前被使用的变量 (程序的输入)
+ * 可以取任意值. ADD/SUB/MUL 对区间的端点做精确 (64 位) 的运算, 若结果可能超出 int 的范围, 运算就可能按 32 位回绕,
+ * 结果只能取任意值; LT/GT 的结果在 [0, 1] 内, 若两个参数的区间不重叠则结果确定; CMOV 在条件的区间不含 0 时等于一次 MOV,
+ * 条件只能为 0 时没有效果, 否则结果为两个值的区间的并.
+ * <br>
+ * 分析结果可供之后的遍与 AssemblyGenerator 查询, 如立即数能否放进 addi/slti 的 12 位立即数字段, 比较的结果是否已经确定等.
+ */
+public final class RangeAnalysis {
+    /**
+     * 闭区间 [min, max]
+     */
+    public record Range(int min, int max) {
+        public static final Range FULL = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        public static final Range BOOLEAN = new Range(0, 1);
+
+        public static Range of(int value) {
+            return new Range(value, value);
+        }
+
+        public boolean contains(int value) {
+            return min <= value && value <= max;
+        }
+
+        public boolean isConstant() {
+            return min == max;
+        }
+
+        /**
+         * @return 区间中的值是否都能放进 12 位有符号立即数字段
+         */
+        public boolean fitsImm12() {
+            return RangeAnalysis.fitsImm12(min) && RangeAnalysis.fitsImm12(max);
+        }
+
+        public Range union(Range other) {
+            return new Range(Math.min(min, other.min), Math.max(max, other.max));
+        }
+    }
+
+    /**
+     * @param value 立即数
+     * @return 该立即数能否直接放进 addi/slti 等指令的 12 位有符号立即数字段
+     */
+    public static boolean fitsImm12(int value) {
+        return -2048 <= value && value <= 2047;
+    }
+
+    /**
+     * @param instructions 指令序列
+     * @return 指令序列的值域分析结果
+     */
+    public static RangeAnalysis analyze(List<Instruction> instructions) {
+        return new RangeAnalysis(PackedIR.pack(instructions));
+    }
+
+    public PackedIR getIR() {
+        return ir;
+    }
+
+    /**
+     * @return 指令执行后其返回值的区间, 对 RET 为 null
+     */
+    public Range resultRange(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index   指令下标
+     * @param operand 参数的位置, 0 或 1
+     * @return 指令执行前该参数的区间
+     */
+    public Range operandRange(int index, int operand) {
+        return operand == 0 ? lhsRanges[index] : rhsRanges[index];
+    }
+
+    /**
+     * @return 变量在整个程序中可能取到的值的区间, 即其各个定义 (以及程序开始时的值, 若在定义之前被使用) 的区间的并
+     */
+    public Range rangeOf(IRVariable variable) {
+        final var slot = ir.slotOf(variable);
+        return slot == PackedIR.NO_SLOT ? null : variableRanges[slot];
+    }
+
+    /**
+     * @return 该 ADD/SUB/MUL 指令的结果是否可能按 32 位回绕; 不回绕时, 对它做的折叠与整数上的运算完全一致
+     */
+    public boolean mayOverflow(int index) {
+        return overflows[index];
+    }
+
+    /**
+     * @return 该 LT/GT 指令的结果或该 CMOV 指令的条件是否已由参数的区间确定
+     */
+    public boolean isDecided(int index) {
+        final var kind = ir.kind(index);
+        if (kind == InstructionKind.CMOV) {
+            final var pred = lhsRanges[index];
+            return !pred.contains(0) || pred.equals(Range.of(0));
+        }
+        return (kind == InstructionKind.LT || kind == InstructionKind.GT) && results[index].isConstant();
+    }
+
+    //============================== 实现 ==============================
+
+    private final PackedIR ir;
+    private final Range[] results;
+    private final Range[] lhsRanges;
+    private final Range[] rhsRanges;
+    private final Range[] variableRanges;
+    private final boolean[] overflows;
+
+    private RangeAnalysis(PackedIR ir) {
+        this.ir = ir;
+        final var size = ir.size();
+        results = new Range[size];
+        lhsRanges = new Range[size];
+        rhsRanges = new Range[size];
+        overflows = new boolean[size];
+        variableRanges = new Range[ir.variableCount()];
+
+        // 各变量当前的定义的区间, null 表示尚未被定义
+        final var current = new Range[ir.variableCount()];
+        for (int i = 0; i < size; i++) {
+            final var kind = ir.kind(i);
+            lhsRanges[i] = operand(current, ir.lhs(i), ir.isLhsImmediate(i));
+            if (kind.getOperandCount() == 2) {
+                rhsRanges[i] = operand(current, ir.rhs(i), ir.isRhsImmediate(i));
+            }
+            if (!kind.hasResult()) {
+                continue;
+            }
+
+            final var result = switch (kind) {
+                case MOV -> lhsRanges[i];
+                case ADD -> arithmetic(i, (long) lhsRanges[i].min() + rhsRanges[i].min(), (long) lhsRanges[i].max() + rhsRanges[i].max());
+                case SUB -> arithmetic(i, (long) lhsRanges[i].min() - rhsRanges[i].max(), (long) lhsRanges[i].max() - rhsRanges[i].min());
+                case MUL -> multiply(i);
+                case LT -> lessThan(lhsRanges[i], rhsRanges[i]);
+                case GT -> lessThan(rhsRanges[i], lhsRanges[i]);
+                case CMOV -> merge(i, operand(current, ir.result(i), false));
+                default -> throw new IllegalStateException("Unexpected value: " + kind);
+            };
+            results[i] = result;
+            current[ir.result(i)] = result;
+            final var slot = ir.result(i);
+            variableRanges[slot] = variableRanges[slot] == null ? result : variableRanges[slot].union(result);
+        }
+    }
+
+    private Range operand(Range[] current, int value, boolean immediate) {
+        if (immediate) {
+            return Range.of(value);
+        }
+        if (current[value] == null) {
+            // 程序的输入, 可以取任意值
+            current[value] = Range.FULL;
+            variableRanges[value] = Range.FULL;
+        }
+        return current[value];
+    }
+
+    private Range arithmetic(int index, long min, long max) {
+        if (min < Integer.MIN_VALUE || max > Integer.MAX_VALUE) {
+            overflows[index] = true;
+            return Range.FULL;
+        }
+        return new Range((int) min, (int) max);
+    }
+
+    private Range multiply(int index) {
+        final var lhs = lhsRanges[index];
+        final var rhs = rhsRanges[index];
+        final long a = (long) lhs.min() * rhs.min(), b = (long) lhs.min() * rhs.max();
+        final long c = (long) lhs.max() * rhs.min(), d = (long) lhs.max() * rhs.max();
+        return arithmetic(index, Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+
+    private static Range lessThan(Range lhs, Range rhs) {
+        if (lhs.max() < rhs.min()) {
+            return Range.of(1);
+        }
+        if (lhs.min() >= rhs.max()) {
+            return Range.of(0);
+        }
+        return Range.BOOLEAN;
+    }
+
+    private Range merge(int index, Range old) {
+        final var pred = lhsRanges[index];
+        if (!pred.contains(0)) {
+            return rhsRanges[index];
+        }
+        if (pred.equals(Range.of(0))) {
+            return old;
+        }
+        return old.union(rhsRanges[index]);
+    }
+}
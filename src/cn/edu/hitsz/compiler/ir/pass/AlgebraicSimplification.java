@@ -0,0 +1,190 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 代数化简与常量重结合
+ * <br>
+ * 逐条指令地应用代数恒等式: x + 0, x * 1, x - x, x * 0, x &lt; x 等被化为 MOV, x * 2 被化为更便宜的 x + x.
+ * 同时把指令规范化, 以便后端与其他遍处理: 减去常量改写为加上其相反数, GT 改写为参数交换后的 LT,
+ * ADD 与 MUL 的立即数参数总是放在右边 (对应 addi 的形式).
+ * <br>
+ * 重结合: 若 t 由 x + c1 (或 x * c1) 定义, 则之后的 t + c2 (t * c2) 直接改写为 x + (c1 + c2) (x * (c1 * c2)), 对 c - t 也作类似处理,
+ * 使嵌套的常量运算合并为一条指令, 原先的中间结果若不再使用则由 DCE 删去. 记录的关系在 x 被重新定义后即失效,
+ * 所以该遍不要求输入为 SSA 形式, 且不改变任何指令的返回值, 输入为 SSA 时输出仍为 SSA.
+ */
+public class AlgebraicSimplification implements IRPass {
+    @Override
+    public String getName() {
+        return "simplify";
+    }
+
+    /**
+     * 形如 base + constant 或 base * constant 的值, generation 为记录时 base 被定义的次数
+     */
+    private record Linear(InstructionKind kind, IRVariable base, int generation, int constant) {
+    }
+
+    private final Map<IRVariable, Linear> forms = new HashMap<>();
+    private final Map<IRVariable, Integer> generations = new HashMap<>();
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        forms.clear();
+        generations.clear();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            if (!instruction.getKind().hasResult()) {
+                result.add(instruction);
+                continue;
+            }
+
+            final var simplified = simplify(instruction);
+            final var target = instruction.getResult();
+            if (simplified == null) {
+                // 指令不改变 target 的值
+                continue;
+            }
+
+            generations.merge(target, 1, Integer::sum);
+            forms.remove(target);
+            record(simplified);
+            result.add(simplified);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return 化简后的指令; 若该指令没有任何效果则返回 null
+     */
+    private Instruction simplify(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var target = instruction.getResult();
+        if (kind == InstructionKind.MOV) {
+            return instruction.getFrom().equals(target) ? null : instruction;
+        }
+        if (kind == InstructionKind.CMOV) {
+            final var pred = instruction.getLHS();
+            final var noEffect = instruction.getRHS().equals(target)
+                || (pred instanceof IRImmediate immediate && immediate.getValue() == 0);
+            return noEffect ? null : instruction;
+        }
+
+        var op = kind;
+        var lhs = instruction.getLHS();
+        var rhs = instruction.getRHS();
+
+        if (lhs instanceof IRImmediate l && rhs instanceof IRImmediate r) {
+            return move(target, IRImmediate.of(IREmulator.compute(op, l.getValue(), r.getValue())));
+        }
+
+        if (op == InstructionKind.GT) {
+            op = InstructionKind.LT;
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+        if (op == InstructionKind.LT) {
+            return lhs.equals(rhs) ? move(target, IRImmediate.of(0)) : binary(op, target, lhs, rhs);
+        }
+
+        if (op == InstructionKind.SUB) {
+            if (lhs.equals(rhs)) {
+                return move(target, IRImmediate.of(0));
+            }
+            if (rhs instanceof IRImmediate r) {
+                op = InstructionKind.ADD;
+                rhs = IRImmediate.of(-r.getValue());
+            } else if (lhs instanceof IRImmediate l && rhs instanceof IRVariable variable) {
+                // c - (x + c1) = (c - c1) - x
+                final var form = validForm(variable, InstructionKind.ADD);
+                if (form != null) {
+                    return binary(InstructionKind.SUB, target, IRImmediate.of(l.getValue() - form.constant()), form.base());
+                }
+                return binary(op, target, lhs, rhs);
+            } else {
+                return binary(op, target, lhs, rhs);
+            }
+        }
+
+        // 现在 op 是 ADD 或 MUL, 立即数放在右边
+        if (lhs instanceof IRImmediate) {
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+        if (!(rhs instanceof IRImmediate r)) {
+            return binary(op, target, lhs, rhs);
+        }
+
+        var constant = r.getValue();
+        final var form = validForm((IRVariable) lhs, op);
+        if (form != null) {
+            lhs = form.base();
+            constant = op == InstructionKind.ADD ? form.constant() + constant : form.constant() * constant;
+        }
+
+        if (op == InstructionKind.ADD) {
+            return constant == 0 ? move(target, lhs) : binary(op, target, lhs, IRImmediate.of(constant));
+        }
+        return switch (constant) {
+            case 0 -> move(target, IRImmediate.of(0));
+            case 1 -> move(target, lhs);
+            case 2 -> binary(InstructionKind.ADD, target, lhs, lhs);
+            default -> binary(op, target, lhs, IRImmediate.of(constant));
+        };
+    }
+
+    /**
+     * 记录 ADD x, c / MUL x, c / MOV x 所定义的值, 供之后的指令重结合
+     */
+    private void record(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var target = instruction.getResult();
+        final var operands = instruction.getOperands();
+        if (!(operands.get(0) instanceof IRVariable base) || base.equals(target)) {
+            return;
+        }
+
+        if (kind == InstructionKind.MOV) {
+            forms.put(target, new Linear(InstructionKind.ADD, base, generations.getOrDefault(base, 0), 0));
+        } else if ((kind == InstructionKind.ADD || kind == InstructionKind.MUL) && operands.get(1) instanceof IRImmediate constant) {
+            forms.put(target, new Linear(kind, base, generations.getOrDefault(base, 0), constant.getValue()));
+        }
+    }
+
+    /**
+     * @return variable 当前的值若形如 base + c (kind 为 ADD) 或 base * c (kind 为 MUL), 且 base 此后未被重新定义, 则返回该关系
+     */
+    private Linear validForm(IRVariable variable, InstructionKind kind) {
+        final var form = forms.get(variable);
+        if (form == null || generations.getOrDefault(form.base(), 0) != form.generation()) {
+            return null;
+        }
+        if (form.kind() == kind || (form.kind() == InstructionKind.ADD && form.constant() == 0)) {
+            // MOV 记录为 x + 0, 对 MUL 而言即 x * 1
+            return form.kind() == kind ? form : new Linear(kind, form.base(), form.generation(), kind == InstructionKind.MUL ? 1 : 0);
+        }
+        return null;
+    }
+
+    private static Instruction move(IRVariable target, IRValue from) {
+        return from.equals(target) ? null : Instruction.createMov(target, from);
+    }
+
+    private static Instruction binary(InstructionKind kind, IRVariable target, IRValue lhs, IRValue rhs) {
+        return Instruction.create(kind, target, List.of(lhs, rhs));
+    }
+}
@@ -0,0 +1,128 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 稀疏条件常量传播 (SCCP)
+ * <br>
+ * 每个变量的格值要么是一个已知的常量, 要么是未知. 在 SSA 形式的直线代码中, 定义总是出现在使用之前, 所以按指令顺序走一遍
+ * 就是 SCCP 工作表的处理顺序, 一遍即可到达不动点. 遍历时先把参数中值已知的变量替换为立即数, 再按 IREmulator 的语义折叠
+ * ADD/SUB/MUL/LT/GT; 值为常量的 MOV 与运算指令被删去, 之后的使用直接得到立即数.
+ * <br>
+ * CMOV 是 "条件" 的部分: 条件已知时只有一个分支可达, CMOV 要么没有效果 (条件为 0), 要么等于一次 MOV; 条件未知但两个分支的值相同时,
+ * 结果也是已知的. 由于 CMOV 隐式地读取自己的返回值, 当条件未知而被合并的变量是常量时, 会在 CMOV 之前用一条 MOV 重新写入该常量.
+ * <br>
+ * 要求输入为 SSA 形式 (见 {@link SSAConstruction}), 输出仍为 SSA 形式.
+ */
+public class ConstantPropagation implements IRPass {
+    @Override
+    public String getName() {
+        return "sccp";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        final Map<IRVariable, Integer> constants = new HashMap<>();
+        // 当前的值已经被某条保留下来的指令写入的变量
+        final Set<IRVariable> materialized = new HashSet<>();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            final var target = kind.hasResult() ? instruction.getResult() : null;
+            final var folded = instruction.rewrite(target, value -> substitute(constants, value));
+
+            if (kind == InstructionKind.RET) {
+                result.add(folded);
+            } else if (kind == InstructionKind.CMOV) {
+                foldCmov(folded, constants, materialized, result);
+            } else {
+                final var value = evaluate(folded);
+                if (value != null) {
+                    constants.put(target, value);
+                    materialized.remove(target);
+                } else {
+                    constants.remove(target);
+                    materialized.add(target);
+                    result.add(folded);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void foldCmov(Instruction cmov, Map<IRVariable, Integer> constants, Set<IRVariable> materialized, List<Instruction> result) {
+        final var target = cmov.getResult();
+        final var pred = cmov.getLHS();
+        final var trueValue = cmov.getRHS();
+
+        if (pred instanceof IRImmediate predicate) {
+            if (predicate.getValue() == 0) {
+                // 条件不成立, 变量保持原值
+                return;
+            }
+            if (trueValue instanceof IRImmediate immediate) {
+                constants.put(target, immediate.getValue());
+                materialized.remove(target);
+                return;
+            }
+
+            constants.remove(target);
+            if (materialized.add(target)) {
+                // 原值从未被写入, 这就是该变量的第一个定义
+                result.add(Instruction.createMov(target, trueValue));
+            } else {
+                result.add(cmov);
+            }
+            return;
+        }
+
+        final var falseValue = constants.get(target);
+        if (falseValue != null && trueValue instanceof IRImmediate immediate && immediate.getValue() == falseValue) {
+            // 两个分支的值相同
+            return;
+        }
+
+        if (falseValue != null) {
+            result.add(Instruction.createMov(target, IRImmediate.of(falseValue)));
+            constants.remove(target);
+        }
+        materialized.add(target);
+        result.add(cmov);
+    }
+
+    /**
+     * @return 参数均已替换为立即数后, 指令的结果; 若无法确定则返回 null
+     */
+    private static Integer evaluate(Instruction instruction) {
+        final var kind = instruction.getKind();
+        if (kind == InstructionKind.MOV) {
+            return instruction.getFrom() instanceof IRImmediate from ? from.getValue() : null;
+        }
+
+        if (instruction.getLHS() instanceof IRImmediate lhs && instruction.getRHS() instanceof IRImmediate rhs) {
+            return IREmulator.compute(kind, lhs.getValue(), rhs.getValue());
+        }
+        return null;
+    }
+
+    private static IRValue substitute(Map<IRVariable, Integer> constants, IRValue value) {
+        if (value instanceof IRVariable variable && constants.containsKey(variable)) {
+            return IRImmediate.of(constants.get(variable));
+        }
+        return value;
+    }
+}
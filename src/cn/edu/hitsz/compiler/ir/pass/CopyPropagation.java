@@ -0,0 +1,147 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 复写传播
+ * <br>
+ * 每条 S -> id = F 都会生成一条 MOV, 把算好的临时变量复制给源语言变量. 该遍分两步消除这些复写:
+ * <ul>
+ *     <li>重命名: 若临时变量 t 只被定义一次 (不是 CMOV), 且唯一的使用是之后的 MOV x, t, 而在两者之间 x 既没有被读取也没有被定义,
+ *     则让 t 的定义直接定义 x, 删去这条 MOV. 例如 (SUB, $0, 3, a), (MOV, c, $0) 变为 (SUB, c, 3, a)</li>
+ *     <li>传播: 对剩下的 MOV x, v, 在 x 与 v 都没有被重新定义之前, 之后对 x 的使用都改为使用 v. 之后不再被使用的 MOV 留给 DCE 删去</li>
+ * </ul>
+ * 该遍不要求输入为 SSA 形式, 输入为 SSA 时输出仍为 SSA.
+ */
+public class CopyPropagation implements IRPass {
+    private int renamed = 0;
+    private int propagated = 0;
+
+    @Override
+    public String getName() {
+        return "copy-prop";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        renamed = 0;
+        propagated = 0;
+        return propagate(rename(instructions));
+    }
+
+    @Override
+    public String getSummary() {
+        return "renamed %d temps, propagated %d uses".formatted(renamed, propagated);
+    }
+
+    private List<Instruction> rename(List<Instruction> instructions) {
+        final var size = instructions.size();
+        final var definitions = new HashMap<IRVariable, Integer>();
+        final var uses = new HashMap<IRVariable, Integer>();
+        for (final var instruction : instructions) {
+            if (instruction.getKind().hasResult()) {
+                definitions.merge(instruction.getResult(), 1, Integer::sum);
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    uses.merge(variable, 1, Integer::sum);
+                }
+            }
+        }
+
+        final var definedAt = new HashMap<IRVariable, Integer>();
+        final var lastMention = new HashMap<IRVariable, Integer>();
+        // 被重命名的指令的下标到其新的返回值, 以及被删去的 MOV
+        final var newResults = new HashMap<Integer, IRVariable>();
+        final var removed = new boolean[size];
+        for (int j = 0; j < size; j++) {
+            final var instruction = instructions.get(j);
+            final var kind = instruction.getKind();
+            var definition = j;
+            if (kind == InstructionKind.MOV && instruction.getFrom() instanceof IRVariable temp && temp.isTemp()
+                && definitions.getOrDefault(temp, 0) == 1 && uses.getOrDefault(temp, 0) == 1 && definedAt.containsKey(temp)) {
+                final var i = definedAt.get(temp);
+                final var target = instruction.getResult();
+                if (instructions.get(i).getKind() != InstructionKind.CMOV && !target.equals(temp)
+                    && lastMention.getOrDefault(target, -1) <= i) {
+                    newResults.put(i, target);
+                    removed[j] = true;
+                    renamed++;
+                    // target 现在由第 i 条指令定义, 若它也是临时变量, 之后还可以继续重命名
+                    definition = i;
+                }
+            }
+
+            if (kind.hasResult()) {
+                definedAt.put(instruction.getResult(), definition);
+                lastMention.put(instruction.getResult(), j);
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    lastMention.put(variable, j);
+                }
+            }
+        }
+
+        final var result = new ArrayList<Instruction>(size - renamed);
+        for (int i = 0; i < size; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            final var instruction = instructions.get(i);
+            final var target = newResults.get(i);
+            result.add(target == null ? instruction : instruction.rewrite(target, value -> value));
+        }
+        return result;
+    }
+
+    private List<Instruction> propagate(List<Instruction> instructions) {
+        // x 到其当前复写来源, 以及反过来的索引
+        final Map<IRVariable, IRValue> copies = new HashMap<>();
+        final Map<IRVariable, List<IRVariable>> copiedFrom = new HashMap<>();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            final var target = kind.hasResult() ? instruction.getResult() : null;
+            final var rewritten = instruction.rewrite(target, value -> {
+                if (value instanceof IRVariable variable && copies.containsKey(variable)) {
+                    propagated++;
+                    return copies.get(variable);
+                }
+                return value;
+            });
+            result.add(rewritten);
+            if (target == null) {
+                continue;
+            }
+
+            // target 被重新定义, 与它有关的复写关系都失效
+            final var source = copies.remove(target);
+            if (source instanceof IRVariable variable) {
+                copiedFrom.get(variable).remove(target);
+            }
+            for (final var copy : copiedFrom.getOrDefault(target, List.of())) {
+                copies.remove(copy);
+            }
+            copiedFrom.remove(target);
+
+            if (kind == InstructionKind.MOV && !rewritten.getFrom().equals(target)) {
+                final var from = rewritten.getFrom();
+                copies.put(target, from);
+                if (from instanceof IRVariable variable) {
+                    copiedFrom.computeIfAbsent(variable, key -> new ArrayList<>()).add(target);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.Liveness;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 死代码与死存储消除
+ * <br>
+ * 第一条 RET 之后的指令不可达, 直接删去. 其余指令做强活跃变量分析 (见 {@link Liveness#analyzeStrong(List)}): RET 使用的变量是活跃的,
+ * 一条指令的返回值若在其后不活跃, 这条指令就是死存储, 被删去且不使其参数活跃. CMOV 隐式地读取自己的返回值, 所以它不会结束返回值的活跃区间.
+ * <br>
+ * 若给出了符号表, 还会统计在保留下来的 IR 中从未出现的已声明变量 (如只声明不使用的变量). 统计结果见 {@link #getSummary()}.
+ * 该遍不要求输入为 SSA 形式.
+ */
+public class DeadCodeElimination implements IRPass {
+    private final SymbolTable symbolTable;
+    private int unreachableInstructions = 0;
+    private int deadInstructions = 0;
+    private int eliminatedVariables = 0;
+    private int unusedSymbols = 0;
+
+    public DeadCodeElimination() {
+        this(null);
+    }
+
+    /**
+     * @param symbolTable 用于统计未使用的已声明变量的符号表, 可以为 null
+     */
+    public DeadCodeElimination(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    @Override
+    public String getName() {
+        return "dce";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        var end = instructions.size();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i).getKind().isReturn()) {
+                end = i + 1;
+                break;
+            }
+        }
+        unreachableInstructions = instructions.size() - end;
+
+        // 强活跃变量分析中, 死存储不会使其参数活跃, 一遍即可找出所有死掉的计算链
+        final var reachable = instructions.subList(0, end);
+        final var liveness = Liveness.analyzeStrong(reachable);
+        final var result = new ArrayList<Instruction>(end);
+        for (int i = 0; i < end; i++) {
+            final var instruction = reachable.get(i);
+            if (instruction.getKind().hasResult() && !liveness.isLiveOut(i, instruction.getResult())) {
+                continue;
+            }
+            result.add(instruction);
+        }
+        deadInstructions = end - result.size();
+
+        final var variablesAfter = variablesOf(result);
+        eliminatedVariables = variablesOf(instructions).size() - variablesAfter.size();
+        unusedSymbols = symbolTable == null ? 0 : countUnusedSymbols(variablesAfter);
+
+        return result;
+    }
+
+    @Override
+    public String getSummary() {
+        final var summary = "removed %d unreachable and %d dead instructions, %d variables".formatted(
+            unreachableInstructions, deadInstructions, eliminatedVariables);
+        if (symbolTable == null) {
+            return summary;
+        }
+        return summary + "; %d of %d declared variables unused".formatted(unusedSymbols, symbolTable.size());
+    }
+
+    private int countUnusedSymbols(Set<IRVariable> variables) {
+        final var used = new HashSet<String>();
+        for (final var variable : variables) {
+            used.add(variable.getBase().getName());
+        }
+
+        int unused = 0;
+        for (int id = 0; id < symbolTable.size(); id++) {
+            if (!used.contains(symbolTable.get(id).getText())) {
+                unused++;
+            }
+        }
+        return unused;
+    }
+
+    private static Set<IRVariable> variablesOf(List<Instruction> instructions) {
+        final var variables = new HashSet<IRVariable>();
+        for (final var instruction : instructions) {
+            if (instruction.getKind().hasResult()) {
+                variables.add(instruction.getResult());
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    variables.add(variable);
+                }
+            }
+        }
+        return variables;
+    }
+}
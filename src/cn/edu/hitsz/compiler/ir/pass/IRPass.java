@@ -0,0 +1,31 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.List;
+
+/**
+ * 一个 IR 到 IR 的变换 (优化遍)
+ * <br>
+ * 本项目的 IR 是没有跳转的直线代码, 所以每个遍都直接处理整个指令序列. 遍不应修改传入的列表, 而是返回一个新的列表;
+ * 若某个遍要求其输入满足某种形式 (如 SSA), 应在文档中注明, 并由 {@link PassManager} 的使用者保证遍的顺序.
+ */
+public interface IRPass {
+    /**
+     * @return 该遍的名字, 用于报告
+     */
+    String getName();
+
+    /**
+     * @param instructions 输入的指令序列
+     * @return 变换后的指令序列
+     */
+    List<Instruction> run(List<Instruction> instructions);
+
+    /**
+     * @return 对上一次 run 的补充说明, 会被写入 PassManager 的报告; 默认为空
+     */
+    default String getSummary() {
+        return "";
+    }
+}
@@ -0,0 +1,38 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.List;
+
+/**
+ * 整个程序的部分求值
+ * <br>
+ * 源语言没有输入, 所以大多数程序的返回值在编译期就已确定. 该遍用 {@link IREmulator#evaluateStatically()} 按模拟执行的语义
+ * 执行整个 IR, 若返回值已知, 就把整个程序替换为一条 RET 该值的指令 (汇编生成时即 li a0, N); 否则 (如读取了未赋值的变量)
+ * 原样返回输入, 交给之后的遍处理. 模拟执行替换后的程序得到的结果与原程序相同.
+ */
+public class PartialEvaluation implements IRPass {
+    private Integer knownResult = null;
+
+    @Override
+    public String getName() {
+        return "partial-eval";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        knownResult = IREmulator.load(instructions).evaluateStatically().orElse(null);
+        if (knownResult == null) {
+            return instructions;
+        }
+
+        return List.of(Instruction.createRet(IRImmediate.of(knownResult)));
+    }
+
+    @Override
+    public String getSummary() {
+        return knownResult == null ? "result not statically known" : "result is %d".formatted(knownResult);
+    }
+}
@@ -0,0 +1,113 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按顺序执行一组 IR 优化遍
+ * <br>
+ * 每次 run 时依次将上一个遍的输出交给下一个遍, 并记录每个遍的耗时以及执行前后的指令条数, 以便在报告中看出各个遍的效果.
+ */
+public class PassManager {
+    /**
+     * 一个遍的一次执行的统计
+     *
+     * @param name   遍的名字
+     * @param nanos  耗时 (纳秒)
+     * @param before 执行前的指令条数
+     * @param after  执行后的指令条数
+     * @param summary 遍给出的补充说明
+     */
+    public record PassStatistics(String name, long nanos, int before, int after, String summary) {
+    }
+
+    private final List<IRPass> passes = new ArrayList<>();
+    private final List<PassStatistics> statistics = new ArrayList<>();
+
+    /**
+     * 在执行顺序的末尾加入一个遍
+     *
+     * @param pass 遍
+     * @return this, 以便链式调用
+     */
+    public PassManager add(IRPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    /**
+     * 移除所有名为 name 的遍
+     *
+     * @param name 遍的名字
+     * @return this, 以便链式调用
+     */
+    public PassManager remove(String name) {
+        passes.removeIf(pass -> pass.getName().equals(name));
+        return this;
+    }
+
+    /**
+     * @return 按执行顺序排列的所有遍
+     */
+    public List<IRPass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
+
+    /**
+     * 依次执行所有的遍, 并用本次执行的统计替换上一次的统计
+     *
+     * @param instructions 输入的指令序列, 不会被修改
+     * @return 所有遍执行后的指令序列
+     */
+    public List<Instruction> run(List<Instruction> instructions) {
+        statistics.clear();
+
+        var current = instructions;
+        for (final var pass : passes) {
+            final var before = current.size();
+            final var begin = System.nanoTime();
+            current = pass.run(current);
+            final var nanos = System.nanoTime() - begin;
+            statistics.add(new PassStatistics(pass.getName(), nanos, before, current.size(), pass.getSummary()));
+        }
+
+        return current;
+    }
+
+    /**
+     * @return 上一次 run 中每个遍的统计, 按执行顺序排列
+     */
+    public List<PassStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * 将上一次 run 的统计按表格输出
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpReport(String path) {
+        final var lines = new ArrayList<String>();
+        lines.add("%-20s %12s %8s %8s %8s".formatted("pass", "time(ms)", "before", "after", "delta"));
+
+        long totalNanos = 0;
+        for (final var pass : statistics) {
+            final var line = "%-20s %12.3f %8d %8d %+8d".formatted(
+                pass.name(), pass.nanos() / 1e6, pass.before(), pass.after(), pass.after() - pass.before());
+            lines.add(pass.summary().isEmpty() ? line : line + "  " + pass.summary());
+            totalNanos += pass.nanos();
+        }
+
+        if (!statistics.isEmpty()) {
+            final var before = statistics.get(0).before();
+            final var after = statistics.get(statistics.size() - 1).after();
+            lines.add("%-20s %12.3f %8d %8d %+8d".formatted("total", totalNanos / 1e6, before, after, after - before));
+        }
+
+        FileUtils.writeLines(path, lines);
+    }
+}
@@ -0,0 +1,76 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.RangeAnalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于值域分析的折叠
+ * <br>
+ * 用 {@link RangeAnalysis} 找出结果已由参数的区间确定的比较, 以及条件已确定的 CMOV: 前者被改写为 MOV 一个常量,
+ * 后者在条件不可能为 0 时被改写为 MOV, 在条件只能为 0 时被删去. 例如 CMOV 的条件是 x &lt; 5, 而 x 已知在 [0, 3] 内.
+ * <br>
+ * 该遍不改变任何变量的值. 但被改写为 MOV 的 CMOV 使其返回值多了一个普通的定义, 因此输出不一定是 SSA 形式.
+ * 报告中还给出 IR 里有多少个立即数能直接放进 12 位的立即数字段, 以及有多少条运算可能按 32 位回绕.
+ */
+public class RangeFolding implements IRPass {
+    private int decidedComparisons = 0;
+    private int decidedMoves = 0;
+    private int immediates = 0;
+    private int narrowImmediates = 0;
+    private int overflows = 0;
+
+    @Override
+    public String getName() {
+        return "range";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        decidedComparisons = 0;
+        decidedMoves = 0;
+        immediates = 0;
+        narrowImmediates = 0;
+        overflows = 0;
+
+        final var ranges = RangeAnalysis.analyze(instructions);
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            final var kind = instruction.getKind();
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRImmediate immediate) {
+                    immediates++;
+                    narrowImmediates += RangeAnalysis.fitsImm12(immediate.getValue()) ? 1 : 0;
+                }
+            }
+            overflows += ranges.mayOverflow(i) ? 1 : 0;
+
+            if (!ranges.isDecided(i)) {
+                result.add(instruction);
+            } else if (kind == InstructionKind.CMOV) {
+                decidedMoves++;
+                if (ranges.operandRange(i, 0).contains(0)) {
+                    // 条件只能为 0, 变量保持原值
+                    continue;
+                }
+                result.add(Instruction.createMov(instruction.getResult(), instruction.getRHS()));
+            } else {
+                decidedComparisons++;
+                result.add(Instruction.createMov(instruction.getResult(), IRImmediate.of(ranges.resultRange(i).min())));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public String getSummary() {
+        return "decided %d comparisons and %d conditional moves; %d of %d immediates fit 12 bits; %d operations may overflow".formatted(
+            decidedComparisons, decidedMoves, narrowImmediates, immediates, overflows);
+    }
+}
@@ -0,0 +1,79 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将 IR 转为 SSA 形式
+ * <br>
+ * IR 是没有跳转的直线代码, 所以不需要 phi: 只需按顺序为每个定义分配新的版本, 并把之后的使用改写为该变量当前的版本即可.
+ * 源语言中的变量 (如 result) 的每次定义都会得到一个新版本 result.1, result.2, ...; IRGenerator 生成的临时变量本来就只定义一次,
+ * 只有在被再次定义时才会得到新版本. 在第一次定义之前被使用的变量保持原名, 代表程序开始时的值.
+ * <br>
+ * CMOV 是唯一的例外: 它读取自己的返回值作为条件不成立时的值, 与之前对同一变量的定义一起构成一次按条件的合并 (相当于 phi),
+ * 因此 CMOV 不产生新版本, 而是沿用该变量当前的版本. 所以 SSA 形式下一个变量可能有多个定义, 但除第一个以外都是 CMOV,
+ * 之后的遍可以据此把 "定义 + 若干 CMOV" 视为一次合并.
+ */
+public class SSAConstruction implements IRPass {
+    @Override
+    public String getName() {
+        return "ssa";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        // 原变量到其当前版本
+        final Map<IRVariable, IRVariable> current = new HashMap<>();
+        final Map<IRVariable, Integer> versions = new HashMap<>();
+        final var definedTemps = new HashSet<IRVariable>();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            final IRVariable defined;
+            if (!kind.hasResult()) {
+                defined = null;
+            } else if (kind == InstructionKind.CMOV) {
+                defined = rename(current, instruction.getResult());
+            } else if (instruction.getResult().isNamed() || !definedTemps.add(instruction.getResult())) {
+                final var base = instruction.getResult();
+                final var version = versions.merge(base, 1, Integer::sum);
+                defined = IRVariable.versioned(base, version);
+            } else {
+                defined = instruction.getResult();
+            }
+
+            // 参数先于返回值求值, 所以改写参数时使用定义之前的版本
+            result.add(instruction.rewrite(defined, value -> rename(current, value)));
+            if (defined != null) {
+                current.put(instruction.getResult(), defined);
+            }
+        }
+
+        return result;
+    }
+
+    private static IRValue rename(Map<IRVariable, IRVariable> current, IRValue value) {
+        return value instanceof IRVariable variable ? rename(current, variable) : value;
+    }
+
+    private static IRVariable rename(Map<IRVariable, IRVariable> current, IRVariable variable) {
+        return current.getOrDefault(variable, variable);
+    }
+
+    /**
+     * @param instruction SSA 形式中的指令
+     * @return 该指令是否是对之前某个定义的按条件合并 (即 CMOV), 而不是一个新的定义
+     */
+    public static boolean isMerge(Instruction instruction) {
+        return instruction.getKind() == InstructionKind.CMOV;
+    }
+}
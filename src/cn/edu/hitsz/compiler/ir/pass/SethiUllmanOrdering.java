@@ -0,0 +1,194 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 按 Sethi-Ullman 寄存器需求重排表达式的求值顺序
+ * <br>
+ * IRGenerator 严格按从左到右的顺序求值, 对于右边更复杂的表达式, 左边的结果要在寄存器里一直等到右边算完, 使同时活跃的临时变量增多,
+ * 而 AssemblyGenerator 只有七个寄存器可用. 该遍先从 IR 中恢复表达式树: 只定义一次, 只使用一次 (且在定义之后使用) 的临时变量,
+ * 若由 MOV 或运算指令定义, 就是其使用者的子树; 其余的指令 (赋值给源语言变量, CMOV, RET 等) 是树根, 按原顺序输出.
+ * 每个树根之前, 先输出它的各个子树, 其中寄存器需求 (Sethi-Ullman 数) 较大的子树先求值:
+ * 叶子 (立即数或非子树的变量) 的需求为 0, 两个子树需求相同时为其加一, 否则为较大者.
+ * <br>
+ * 子树只在相邻两个树根之间移动, 而树根之间只有子树指令, 它们只读取叶子, 所以重排不会跨过任何变量的重新定义.
+ * 报告中给出重排前后求值过程中同时等待被使用的子树结果数的最大值, 即求值各个表达式所需的临时寄存器数.
+ * 它直接沿指令顺序计数得到, 不需要对整个程序做活跃变量分析.
+ */
+public class SethiUllmanOrdering implements IRPass {
+    private static final int PURE_KINDS = InstructionKind.maskOf(
+        InstructionKind.MOV, InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.LT, InstructionKind.GT);
+
+    private List<Instruction> instructions;
+    private final Map<IRVariable, Integer> producers = new HashMap<>();
+    private final Map<Integer, Integer> needs = new HashMap<>();
+    private int peakBefore = 0;
+    private int peakAfter = 0;
+
+    @Override
+    public String getName() {
+        return "sethi-ullman";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        this.instructions = instructions;
+        producers.clear();
+        needs.clear();
+
+        final var size = instructions.size();
+        final var definitions = new HashMap<IRVariable, Integer>();
+        final var uses = new HashMap<IRVariable, Integer>();
+        final var consumer = new HashMap<IRVariable, Integer>();
+        for (int i = 0; i < size; i++) {
+            final var instruction = instructions.get(i);
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    uses.merge(variable, 1, Integer::sum);
+                    consumer.put(variable, i);
+                }
+            }
+            if (instruction.getKind().hasResult()) {
+                definitions.merge(instruction.getResult(), 1, Integer::sum);
+                if (instruction.getKind() == InstructionKind.CMOV) {
+                    // CMOV 隐式地使用自己的返回值
+                    uses.merge(instruction.getResult(), 1, Integer::sum);
+                }
+            }
+        }
+
+        // 候选的子树根: 只定义一次, 只使用一次且在定义之后使用的临时变量
+        final var isNode = new boolean[size];
+        final var consumerOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            final var instruction = instructions.get(i);
+            if ((instruction.getKind().bit() & PURE_KINDS) == 0) {
+                continue;
+            }
+            final var result = instruction.getResult();
+            if (result.isTemp() && definitions.get(result) == 1 && uses.getOrDefault(result, 0) == 1 && consumer.get(result) > i) {
+                isNode[i] = true;
+                consumerOf[i] = consumer.get(result);
+            }
+        }
+
+        // 子树与其使用者之间不能有树根, 不满足的子树退化为树根, 直到不动点
+        var changed = true;
+        while (changed) {
+            changed = false;
+            var nextRoot = size;
+            for (int i = size - 1; i >= 0; i--) {
+                if (isNode[i] && nextRoot < consumerOf[i]) {
+                    isNode[i] = false;
+                    changed = true;
+                }
+                if (!isNode[i]) {
+                    nextRoot = i;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (isNode[i]) {
+                producers.put(instructions.get(i).getResult(), i);
+            }
+        }
+
+        final var order = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            if (!isNode[i]) {
+                emit(i, order);
+            }
+        }
+        final var result = new ArrayList<Instruction>(size);
+        for (final var index : order) {
+            result.add(instructions.get(index));
+        }
+
+        peakBefore = peakPending(IntStream.range(0, size).boxed().toList(), isNode);
+        peakAfter = peakPending(order, isNode);
+        this.instructions = null;
+        return result;
+    }
+
+    @Override
+    public String getSummary() {
+        return "peak pending subtree results %d -> %d".formatted(peakBefore, peakAfter);
+    }
+
+    /**
+     * 按给定的顺序执行指令时, 已经算出但还没有被使用的子树结果数的最大值
+     *
+     * @param order  指令下标的执行顺序
+     * @param isNode 各指令是否是子树
+     */
+    private int peakPending(List<Integer> order, boolean[] isNode) {
+        var pending = 0;
+        var peak = 0;
+        for (final var index : order) {
+            for (final var operand : instructions.get(index).getOperands()) {
+                if (operand instanceof IRVariable variable && producers.containsKey(variable)) {
+                    pending--;
+                }
+            }
+            if (isNode[index]) {
+                pending++;
+            }
+            peak = Math.max(peak, pending);
+        }
+        return peak;
+    }
+
+    /**
+     * 先按寄存器需求从大到小输出各个子树, 再输出该指令本身
+     */
+    private void emit(int index, List<Integer> result) {
+        final var children = children(index);
+        if (children.size() == 2 && need(children.get(1)) > need(children.get(0))) {
+            emit(children.get(1), result);
+            emit(children.get(0), result);
+        } else {
+            for (final var child : children) {
+                emit(child, result);
+            }
+        }
+        result.add(index);
+    }
+
+    private List<Integer> children(int index) {
+        final var children = new ArrayList<Integer>(2);
+        for (final var operand : instructions.get(index).getOperands()) {
+            if (operand instanceof IRVariable variable && producers.containsKey(variable)) {
+                children.add(producers.get(variable));
+            }
+        }
+        return children;
+    }
+
+    private int need(int index) {
+        final var cached = needs.get(index);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var childNeeds = children(index).stream().map(this::need).toList();
+        final int need;
+        if (childNeeds.isEmpty()) {
+            need = 1;
+        } else if (childNeeds.size() == 1) {
+            need = Math.max(1, childNeeds.get(0));
+        } else {
+            final int lhs = childNeeds.get(0), rhs = childNeeds.get(1);
+            need = lhs == rhs ? lhs + 1 : Math.max(lhs, rhs);
+        }
+        needs.put(index, need);
+        return need;
+    }
+}
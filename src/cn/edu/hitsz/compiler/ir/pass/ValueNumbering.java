@@ -0,0 +1,156 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 值编号 (公共子表达式消除)
+ * <br>
+ * 为每个值分配一个编号: 同一个立即数得到同一个编号, MOV 的结果与其参数同号, 运算指令的结果由 (种类, 各参数的编号) 决定.
+ * ADD 与 MUL 的两个参数按编号排序, GT 被视为参数交换后的 LT, 因此 a + b 与 b + a, a > b 与 b < a 会得到同一个编号.
+ * CMOV 的结果还取决于被合并变量原来的编号.
+ * <br>
+ * 若一条指令算出的编号已经保存在某个变量 (称为该编号的持有者) 中, 该指令被删去, 之后对其结果的使用都改为使用持有者.
+ * 为了在变量被重新定义时 (非 SSA 的输入, 或 SSA 中的 CMOV 合并) 保持正确, 持有者被重新定义之前, 仍在借用它的变量会先用一条 MOV
+ * 取得自己的值; 被 CMOV 合并的变量若被借用, 也会先用 MOV 写回. 所以该遍不要求输入为 SSA 形式, 输入为 SSA 时输出仍为 SSA.
+ */
+public class ValueNumbering implements IRPass {
+    @Override
+    public String getName() {
+        return "gvn";
+    }
+
+    /**
+     * 运算的键, merged 是 CMOV 中被合并变量原来的编号, 其他指令为 -1
+     */
+    private record Expression(InstructionKind kind, int lhs, int rhs, int merged) {
+    }
+
+    private final Map<IRVariable, Integer> numberOf = new HashMap<>();
+    private final Map<Integer, Integer> immediateNumbers = new HashMap<>();
+    private final Map<Expression, Integer> expressionNumbers = new HashMap<>();
+    private final Map<Integer, IRVariable> holders = new HashMap<>();
+    // 指令被删去的变量到持有其值的变量, 以及反过来的索引
+    private final Map<IRVariable, IRVariable> aliases = new HashMap<>();
+    private final Map<IRVariable, List<IRVariable>> borrowers = new HashMap<>();
+    private int nextNumber = 0;
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        numberOf.clear();
+        immediateNumbers.clear();
+        expressionNumbers.clear();
+        holders.clear();
+        aliases.clear();
+        borrowers.clear();
+        nextNumber = 0;
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            if (kind == InstructionKind.RET) {
+                result.add(instruction.rewrite(null, this::resolve));
+                continue;
+            }
+
+            final var target = instruction.getResult();
+            final var rewritten = instruction.rewrite(target, this::resolve);
+
+            // target 即将被重新定义, 借用它的变量先取得自己的值
+            for (final var borrower : borrowers.getOrDefault(target, List.of())) {
+                aliases.remove(borrower);
+                result.add(Instruction.createMov(borrower, target));
+                holders.put(numberOf.get(borrower), borrower);
+            }
+            borrowers.remove(target);
+            final var previous = aliases.remove(target);
+            if (previous != null) {
+                borrowers.get(previous).remove(target);
+                if (kind == InstructionKind.CMOV) {
+                    // CMOV 会读取 target 原来的值
+                    result.add(Instruction.createMov(target, previous));
+                }
+            }
+
+            if (kind == InstructionKind.MOV) {
+                define(target, numberOf(rewritten.getFrom()));
+                result.add(rewritten);
+                continue;
+            }
+
+            final var expression = keyOf(rewritten);
+            final var number = expressionNumbers.get(expression);
+            final var holder = number == null ? null : holders.get(number);
+            if (holder != null && isHolding(holder, number)) {
+                if (!holder.equals(target)) {
+                    numberOf.put(target, number);
+                    aliases.put(target, holder);
+                    borrowers.computeIfAbsent(holder, key -> new ArrayList<>()).add(target);
+                }
+                // 否则 target 本来就持有该值, 指令是多余的
+                continue;
+            }
+
+            final var newNumber = number == null ? nextNumber++ : number;
+            expressionNumbers.putIfAbsent(expression, newNumber);
+            define(target, newNumber);
+            result.add(rewritten);
+        }
+
+        return result;
+    }
+
+    private Expression keyOf(Instruction instruction) {
+        var kind = instruction.getKind();
+        var lhs = numberOf(instruction.getLHS());
+        var rhs = numberOf(instruction.getRHS());
+        final var merged = kind == InstructionKind.CMOV ? numberOf(instruction.getResult()) : -1;
+
+        if (kind == InstructionKind.GT) {
+            kind = InstructionKind.LT;
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        } else if ((kind == InstructionKind.ADD || kind == InstructionKind.MUL) && lhs > rhs) {
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+        return new Expression(kind, lhs, rhs, merged);
+    }
+
+    private void define(IRVariable target, int number) {
+        numberOf.put(target, number);
+        final var holder = holders.get(number);
+        if (holder == null || !isHolding(holder, number)) {
+            holders.put(number, target);
+        }
+    }
+
+    /**
+     * @return 该变量当前是否确实保存着该编号的值 (没有被重新定义, 也没有被删去)
+     */
+    private boolean isHolding(IRVariable variable, int number) {
+        return numberOf.getOrDefault(variable, -1) == number && !aliases.containsKey(variable);
+    }
+
+    private int numberOf(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            return immediateNumbers.computeIfAbsent(immediate.getValue(), key -> nextNumber++);
+        }
+        // 在定义之前被使用的变量代表程序开始时的值, 各自得到一个新编号
+        return numberOf.computeIfAbsent((IRVariable) value, key -> nextNumber++);
+    }
+
+    private IRValue resolve(IRValue value) {
+        return value instanceof IRVariable variable ? aliases.getOrDefault(variable, variable) : value;
+    }
+}
@@ -1,5 +1,6 @@
 package cn.edu.hitsz.compiler.lexer;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
@@ -15,12 +16,14 @@ import java.util.stream.StreamSupport;
  * @see TokenKind 词法单元类型的实现
  */
 public class LexicalAnalyzer {
+    private final CompilationContext context;
     private final SymbolTable symbolTable;
     private final Queue<Character> buffer = new ArrayDeque<>();
     private final List<Token> result = new LinkedList<>();
 
-    public LexicalAnalyzer(SymbolTable symbolTable) {
-        this.symbolTable = symbolTable;
+    public LexicalAnalyzer(CompilationContext context) {
+        this.context = context;
+        this.symbolTable = context.getSymbolTable();
     }
 
 
@@ -102,7 +105,7 @@ public class LexicalAnalyzer {
                             // commit
                             text.deleteCharAt(text.length()-1);
                             nxt = false; state = State.INIT;
-                            result.add(Token.normal(TokenKind.fromString(kw), text.toString()));
+                            result.add(Token.normal(context.tokenKind(kw), text.toString()));
                             text.delete(0, text.length());
                         }
                     } else if (kw.charAt(text.length()-1) != text.charAt(text.length()-1)) {
@@ -117,7 +120,7 @@ public class LexicalAnalyzer {
                         // commit
                         text.deleteCharAt(text.length()-1);
                         nxt = false; state = State.INIT;
-                        result.add(Token.normal(TokenKind.fromString("IntConst"), text.toString()));
+                        result.add(Token.normal(context.tokenKind("IntConst"), text.toString()));
                         text.delete(0, text.length());
                     }
                     // continue matching
@@ -127,7 +130,7 @@ public class LexicalAnalyzer {
                         // commit
                         text.deleteCharAt(text.length()-1);
                         nxt = false; state = State.INIT;
-                        result.add(Token.normal(TokenKind.fromString("id"), text.toString()));
+                        result.add(Token.normal(context.tokenKind("id"), text.toString()));
                         symbolTable.findOrAdd(text.toString());
                         text.delete(0, text.length());
                     }
@@ -137,7 +140,7 @@ public class LexicalAnalyzer {
                     // commit
                     text.deleteCharAt(text.length()-1);
                     nxt = false; state = State.INIT;
-                    result.add(Token.simple(TokenKind.fromString(text.toString())));
+                    result.add(Token.simple(context.tokenKind(text.toString())));
                     text.delete(0, text.length());
                 }
                 default -> throw new RuntimeException("Unexpected state: " + state);
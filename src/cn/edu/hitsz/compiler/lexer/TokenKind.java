@@ -26,19 +26,32 @@ import java.util.Map;
  * @see cn.edu.hitsz.compiler.parser.table.Production 产生式 - BNF 语法描述的基本要素
  */
 public class TokenKind extends Term {
-    // 允许用作 TokenKind 的 id 的字符串集合
-    private static final Map<String, TokenKind> allowed = new HashMap<>();
+    // 允许用作 TokenKind 的 id 的字符串集合, 载入后不再修改, 整体替换以便多线程读取
+    private static volatile Map<String, TokenKind> allowed = Map.of();
     private static final TokenKind eof = new TokenKind("$", -1);
 
     /**
-     * 从码点文件中读取允许的标识符集合
+     * 从码点文件中读取允许的标识符集合, 作为全局使用的 TokenKind 集合
+     * <br>
+     * 重复调用不会重新读取. 需要互相独立的 TokenKind 集合时 (如一次编译一份), 请使用 readTokenKinds
      */
-    public static void loadTokenKinds() {
+    public static synchronized void loadTokenKinds() {
         if (!allowed.isEmpty()) {
-            throw new RuntimeException("Can not set allowed twice");
+            return;
         }
 
-        final var lines = FileUtils.readLines(FilePathConfig.CODING_MAP_PATH);
+        allowed = readTokenKinds(FilePathConfig.CODING_MAP_PATH);
+    }
+
+    /**
+     * 从码点文件中读取一份新的 TokenKind 集合, 不影响全局的集合
+     *
+     * @param path 码点文件路径
+     * @return 标识符到 TokenKind 的不可变 Map
+     */
+    public static Map<String, TokenKind> readTokenKinds(String path) {
+        final var kinds = new HashMap<String, TokenKind>();
+        final var lines = FileUtils.readLines(path);
         for (final var line : lines) {
             // 码点文件每行形如:
             // 54 IntConst
@@ -47,12 +60,13 @@ public class TokenKind extends Term {
             final var code = Integer.parseInt(words[0]);
             final var id = words[1];
 
-            allowed.put(id, new TokenKind(id, code));
+            kinds.put(id, new TokenKind(id, code));
         }
-        allowed.put(";", allowed.get("Semicolon"));
+        kinds.put(";", kinds.get("Semicolon"));
 
         // EOF
-        allowed.put("$", eof);
+        kinds.put("$", eof);
+        return Collections.unmodifiableMap(kinds);
     }
 
     /**
@@ -60,7 +74,7 @@ public class TokenKind extends Term {
      * @return 该标识符是否被允许作为 TokenKind 的标识符
      */
     public static boolean isAllowed(String id) {
-        if (allowed == null) {
+        if (allowed.isEmpty()) {
             throw new RuntimeException("Empty allowed");
         }
 
@@ -71,7 +85,7 @@ public class TokenKind extends Term {
      * @return 一个标识符到 TokenKind 的 Map, 其键集包含了所有允许的标识符
      */
     public static Map<String, TokenKind> allAllowedTokenKinds() {
-        return Collections.unmodifiableMap(allowed);
+        return allowed;
     }
 
     /**
@@ -80,7 +94,7 @@ public class TokenKind extends Term {
      * @throws RuntimeException 码点文件尚未被读取, 或该标识符不被允许作为 TokenKind 的标识符
      */
     public static TokenKind fromString(String id) {
-        if (allowed == null || !allowed.containsKey(id)) {
+        if (!allowed.containsKey(id)) {
             throw new RuntimeException("Illegal Identifier");
         }
 
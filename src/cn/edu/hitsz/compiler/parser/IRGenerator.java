@@ -1,36 +1,65 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 // TODO: 实验三: 实现 IR 生成
 
 /**
- *
+ * 在语法分析的过程中生成 IR
+ * <br>
+ * 开启折叠模式时, 在规约时就完成两种局部优化, 使生成的 IR 在任何优化遍之前就更小:
+ * 参数均为立即数的运算与条件为立即数的 ?: 直接算出结果而不生成指令; 同一条语句中 (op, lhs, rhs) 相同的运算复用之前的临时变量.
+ * 由于语句末尾的赋值才会改变源语言变量的值, 复用只在同一条语句内进行.
  */
 public class IRGenerator implements ActionObserver {
+    private final CompilationContext context;
+    private final boolean folding;
     private final Stack<IRValue> stack = new Stack<>();
     private final List<Instruction> ir = new ArrayList<>();
+    // 当前语句中已经生成的运算及其结果
+    private final Map<Operation, IRVariable> statementTemps = new HashMap<>();
     private SymbolTable symbolTable = null;
 
+    private record Operation(InstructionKind kind, IRValue lhs, IRValue rhs) {
+    }
+
+    public IRGenerator(CompilationContext context) {
+        this(context, false);
+    }
+
+    /**
+     * @param context 本次编译的上下文
+     * @param folding 是否在规约时折叠常量并复用同一语句中相同运算的结果
+     */
+    public IRGenerator(CompilationContext context, boolean folding) {
+        this.context = context;
+        this.folding = folding;
+    }
+
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        if(currentToken.getKind() == TokenKind.fromString("id")) {
-            stack.push(IRVariable.named(currentToken.getText()));
-        } else if (currentToken.getKind() == TokenKind.fromString("IntConst")) {
+        if(currentToken.getKind() == context.tokenKind("id")) {
+            stack.push(context.getVariables().named(currentToken.getText()));
+        } else if (currentToken.getKind() == context.tokenKind("IntConst")) {
             stack.push(IRImmediate.of(Integer.parseInt(currentToken.getText())));
         } else {
             stack.push(null);
@@ -49,6 +78,7 @@ public class IRGenerator implements ActionObserver {
 
                 var instruction = Instruction.createMov((IRVariable) id, f);
                 ir.add(instruction);
+                statementTemps.clear();
                 stack.push(null);
             }
             case 7 -> { // S -> return F
@@ -58,6 +88,7 @@ public class IRGenerator implements ActionObserver {
 
                 var instruction = Instruction.createRet(f);
                 ir.add(instruction);
+                statementTemps.clear();
                 stack.push(null);
             }
             case 8 -> { // F -> G ? E : E
@@ -68,7 +99,13 @@ public class IRGenerator implements ActionObserver {
                 var g = stack.pop();
                 assert g != null && e1 != null && e2 != null && colon == null && question == null;
 
-                var result = IRVariable.temp();
+                if (folding && (g instanceof IRImmediate || e1.equals(e2))) {
+                    // 条件已知, 或两个分支相同
+                    stack.push(g instanceof IRImmediate pred && pred.getValue() == 0 ? e2 : e1);
+                    return;
+                }
+
+                var result = context.newTemp();
                 var instruction1 = Instruction.createMov(result, e2);
                 var instruction2 = Instruction.createCmov(result, g, e1);
                 ir.add(instruction1);
@@ -84,20 +121,37 @@ public class IRGenerator implements ActionObserver {
                 var x = stack.pop();
                 assert x != null && y != null && o == null;
 
-                var result = IRVariable.temp();
-
                 var op = production.body().get(1);
                 assert op instanceof TokenKind;
-                var instruction = switch (op.getTermName()) {
-                    case "+" -> Instruction.createAdd(result, x, y);
-                    case "-" -> Instruction.createSub(result, x, y);
-                    case "*" -> Instruction.createMul(result, x, y);
-                    case ">" -> Instruction.createGt(result, x, y);
-                    case "<" -> Instruction.createLt(result, x, y);
+                var kind = switch (op.getTermName()) {
+                    case "+" -> InstructionKind.ADD;
+                    case "-" -> InstructionKind.SUB;
+                    case "*" -> InstructionKind.MUL;
+                    case ">" -> InstructionKind.GT;
+                    case "<" -> InstructionKind.LT;
                     default -> throw new IllegalStateException("Unexpected production: " + production);
                 };
 
-                ir.add(instruction);
+                if (folding) {
+                    if (x instanceof IRImmediate lhs && y instanceof IRImmediate rhs) {
+                        stack.push(IRImmediate.of(IREmulator.compute(kind, lhs.getValue(), rhs.getValue())));
+                        return;
+                    }
+                    var reused = statementTemps.get(new Operation(kind, x, y));
+                    if (reused == null && (kind == InstructionKind.ADD || kind == InstructionKind.MUL)) {
+                        reused = statementTemps.get(new Operation(kind, y, x));
+                    }
+                    if (reused != null) {
+                        stack.push(reused);
+                        return;
+                    }
+                }
+
+                var result = context.newTemp();
+                ir.add(Instruction.create(kind, result, List.of(x, y)));
+                if (folding) {
+                    statementTemps.put(new Operation(kind, x, y), result);
+                }
                 stack.push(result);
             }
             case 18 -> { // B -> ( F )
@@ -2,7 +2,6 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.parser.table.Term;
@@ -29,14 +28,14 @@ public class SemanticAnalyzer implements ActionObserver {
         switch (production.index()) {
             case 5 -> { // D -> int
                 var kw = stack.pop();
-                assert kw.getKind() == TokenKind.fromString("int");
+                assert kw.getKindId().equals("int");
                 stack.push(kw);
             }
             case 4 -> { // S -> D id
                 var id = stack.pop();
                 var d = stack.pop();
-                assert id.getKind() == TokenKind.fromString("id");
-                assert d.getKind() == TokenKind.fromString("int");
+                assert id.getKindId().equals("id");
+                assert d.getKindId().equals("int");
                 var entry = symbolTable.get(id.getText());
                 entry.setType(SourceCodeType.Int);
 
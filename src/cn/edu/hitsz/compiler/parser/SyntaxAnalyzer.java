@@ -1,5 +1,6 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.*;
@@ -26,8 +27,8 @@ public class SyntaxAnalyzer {
     private LRTable table = null;
 
 
-    public SyntaxAnalyzer(SymbolTable symbolTable) {
-        this.symbolTable = symbolTable;
+    public SyntaxAnalyzer(CompilationContext context) {
+        this.symbolTable = context.getSymbolTable();
     }
 
     /**
@@ -21,8 +21,11 @@ public class GrammarInfo {
         return nonTerminals.get(name);
     }
 
-    private GrammarInfo() {
-        final var lines = FileUtils.readLines(FilePathConfig.GRAMMAR_PATH);
+    private GrammarInfo(List<String> lines, Map<String, TokenKind> tokenKinds) {
+        if (tokenKinds.isEmpty()) {
+            throw new RuntimeException("Empty allowed");
+        }
+
         for (int idx = 0; idx < lines.size(); idx++) {
             final var line = lines.get(idx);
             // 形如 `A -> B ( id intConst ) C;` 的产生式
@@ -36,8 +39,8 @@ public class GrammarInfo {
 
             final var body = new ArrayList<Term>();
             for (final var termName : bodyStrings) {
-                if (TokenKind.isAllowed(termName)) {
-                    body.add(TokenKind.fromString(termName));
+                if (tokenKinds.containsKey(termName)) {
+                    body.add(tokenKinds.get(termName));
                 } else {
                     body.add(getOrCreateNonTerminal(termName));
                 }
@@ -54,14 +57,62 @@ public class GrammarInfo {
     // 顺手写个懒加载
     private static GrammarInfo instance = null;
 
-    private static GrammarInfo getInstance() {
+    private static synchronized GrammarInfo getInstance() {
         if (instance == null) {
-            instance = new GrammarInfo();
+            instance = load(FilePathConfig.GRAMMAR_PATH);
         }
 
         return instance;
     }
 
+    /**
+     * 读取一份独立于全局语法的语法文件, 用于在编辑 grammar.txt 时与之前的语法作比较
+     *
+     * @param path 语法文件路径
+     * @return 新读取的语法信息
+     */
+    public static GrammarInfo load(String path) {
+        return parse(FileUtils.readLines(path));
+    }
+
+    /**
+     * @param lines 语法文件的各行, 格式与 grammar.txt 相同
+     * @return 从这些行中解析出的语法信息
+     */
+    public static GrammarInfo parse(List<String> lines) {
+        return parse(lines, TokenKind.allAllowedTokenKinds());
+    }
+
+    /**
+     * @param lines      语法文件的各行, 格式与 grammar.txt 相同
+     * @param tokenKinds 用于识别终结符的 TokenKind 集合, 而不是全局的集合
+     * @return 从这些行中解析出的语法信息
+     */
+    public static GrammarInfo parse(List<String> lines, Map<String, TokenKind> tokenKinds) {
+        return new GrammarInfo(lines, tokenKinds);
+    }
+
+    /**
+     * @return 该语法的所有非终结符
+     */
+    public Map<String, NonTerminal> nonTerminals() {
+        return Collections.unmodifiableMap(nonTerminals);
+    }
+
+    /**
+     * @return 该语法的所有产生式, 按其在语法文件中的顺序排列
+     */
+    public List<Production> productionsInOrder() {
+        return Collections.unmodifiableList(productionsInOrder);
+    }
+
+    /**
+     * @return 该语法的开始产生式
+     */
+    public Production beginProduction() {
+        return productionsInOrder.get(0);
+    }
+
     public static Map<String, NonTerminal> getNonTerminals() {
         return Collections.unmodifiableMap(getInstance().nonTerminals);
     }
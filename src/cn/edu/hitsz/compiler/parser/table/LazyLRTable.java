@@ -0,0 +1,55 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.List;
+
+/**
+ * 按需构造状态的 LR 分析表
+ * <br>
+ * 在查询某个状态的 action 或 goto 之前, 先让 TableGenerator 构造该状态. 对 LR 驱动程序而言, 它与普通的 LRTable 没有区别.
+ *
+ * @see TableGenerator#getLazyTable()
+ */
+class LazyLRTable extends LRTable {
+    @Override
+    public Action getAction(Status status, Token token) {
+        generator.ensureConstructed(status);
+        return super.getAction(status, token);
+    }
+
+    @Override
+    public Status getGoto(Status status, NonTerminal nonTerminal) {
+        generator.ensureConstructed(status);
+        return super.getGoto(status, nonTerminal);
+    }
+
+    @Override
+    public Status getInit() {
+        return generator.getLazyInit();
+    }
+
+    /**
+     * 只 dump 已经构造过的状态; 作为转移目标被发现但还没有构造的状态没有填充任何动作, 不会出现在输出中, 所以编号可能不连续
+     */
+    @Override
+    public void dumpTable(String path) {
+        final var constructed = statusInIndexOrder.stream().filter(generator::isConstructed).toList();
+        new LRTable(constructed, terminals, nonTerminals).dumpTable(path);
+    }
+
+    LazyLRTable(TableGenerator generator, List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        super(statusInIndexOrder, terminals, nonTerminals);
+        this.generator = generator;
+        this.statusInIndexOrder = statusInIndexOrder;
+        this.terminals = terminals;
+        this.nonTerminals = nonTerminals;
+    }
+
+    private final TableGenerator generator;
+    // LRTable 中的同名字段是私有的, 这里另存一份引用供 dumpTable 使用
+    private final List<Status> statusInIndexOrder;
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
+}
@@ -4,8 +4,6 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * 根据语法文件构造 LR 分析表.
@@ -14,13 +12,23 @@ import java.util.stream.Stream;
  */
 public class TableGenerator {
     public TableGenerator() {
-        this.productions = GrammarInfo.getProductionsInOrder();
-        this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
-        this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
+        this(GrammarInfo.getProductionsInOrder());
+    }
 
-        if (productions.get(0).body().size() != 1) {
-            throw new RuntimeException("The first production in grammar file must like S -> S'");
-        }
+    /**
+     * @param productions 文法的所有产生式, 第一条必须形如 S -> S'
+     */
+    public TableGenerator(List<Production> productions) {
+        this(productions, TokenKind.allAllowedTokenKinds().values());
+    }
+
+    /**
+     * @param productions 文法的所有产生式, 第一条必须形如 S -> S'
+     * @param terminals   所有终结符, 而不是全局的 TokenKind 集合
+     */
+    public TableGenerator(List<Production> productions, Collection<TokenKind> terminals) {
+        this.terminals = new HashSet<>(terminals);
+        loadProductions(productions);
     }
 
     /**
@@ -34,6 +42,66 @@ public class TableGenerator {
         genTable();
     }
 
+    /**
+     * 根据修改后的产生式列表增量地更新分析表
+     * <br>
+     * 与 run 从头构造整张表不同, 该方法将新的产生式与上一次构造时使用的产生式按文本比较, 只重新计算受产生式集合发生变化的
+     * 非终结符影响的 first/follow 集合. 状态按核识别, 闭包中不涉及这些非终结符的状态连同其转移被原样保留,
+     * 只从涉及它们的状态出发重新求闭包与转移, 并原地修补分析表中发生了变化的状态. 因此状态的编号可能与 run 从头构造出的不同.
+     * 之前通过 getTable 获得的 LRTable 所引用的状态对象会被一并更新.
+     * <br>
+     * 调用前必须已经调用过 run.
+     *
+     * @param newProductions 修改后的文法的所有产生式, 第一条必须形如 S -> S'
+     * @return 被重新填充的状态的数量
+     */
+    public int update(List<Production> newProductions) {
+        final var oldProductions = productions;
+        final var oldStart = productions.get(0);
+        final var oldNonTerminals = nonTerminals;
+
+        final var oldByText = new HashMap<String, Production>();
+        oldProductions.forEach(production -> oldByText.put(production.toString(), production));
+        final var newByText = new HashMap<String, Production>();
+        newProductions.forEach(production -> newByText.put(production.toString(), production));
+
+        // 被删除或新增的产生式, 以及它们的头 (产生式集合发生了变化的非终结符)
+        final var changedProductions = new ArrayList<Production>();
+        oldProductions.stream().filter(production -> !newByText.containsKey(production.toString())).forEach(changedProductions::add);
+        newProductions.stream().filter(production -> !oldByText.containsKey(production.toString())).forEach(changedProductions::add);
+        final var changedHeads = new HashSet<NonTerminal>();
+        changedProductions.forEach(production -> changedHeads.add(production.head()));
+
+        loadProductions(newProductions);
+
+        // 新增或消失的非终结符
+        final var changedNonTerminals = new HashSet<NonTerminal>(oldNonTerminals);
+        changedNonTerminals.addAll(nonTerminals);
+        changedNonTerminals.removeIf(nonTerminal -> oldNonTerminals.contains(nonTerminal) && nonTerminals.contains(nonTerminal));
+        for (final var nonTerminal : changedNonTerminals) {
+            first.remove(nonTerminal);
+            follow.remove(nonTerminal);
+        }
+
+        final var changedFirst = updateFirst(oldProductions, changedHeads, changedNonTerminals);
+        final var changedFollow = updateFollow(oldProductions, changedProductions, changedFirst, changedNonTerminals);
+
+        // 旧产生式到新产生式的对应, 被删除的产生式没有对应; 以及文本不变但编号改变了的产生式
+        final var remap = new HashMap<Production, Production>();
+        final var renumbered = new HashSet<Production>();
+        for (final var production : oldProductions) {
+            final var newProduction = newByText.get(production.toString());
+            if (newProduction != null) {
+                remap.put(production, newProduction);
+                if (newProduction.index() != production.index()) {
+                    renumbered.add(newProduction);
+                }
+            }
+        }
+
+        return updateDFA(oldStart, remap, renumbered, changedHeads, changedFollow);
+    }
+
     /**
      * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
      */
@@ -56,9 +124,62 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
-    private final List<Production> productions;
+    /**
+     * 以懒惰模式构造 LR 表: 只预先计算 first/follow 集合, 各个状态的闭包, 转移与 action/goto 均在
+     * LR 驱动程序第一次查询该状态时才构造, 并被记录下来供之后的查询使用.
+     * <br>
+     * 这样语法分析只需为输入实际经过的状态付出构造代价. 通过该表 dump 出的只有已经构造过的状态,
+     * 已经作为转移目标被发现但尚未构造的状态不会被输出, 因此编号可能不连续.
+     * 状态的编号按其被发现的顺序分配, 因此可能与 run 构造出的表不同. 不应在同一个 TableGenerator 上混用两种模式.
+     *
+     * @return 按需构造状态的 LR 表
+     */
+    public LRTable getLazyTable() {
+        if (follow.isEmpty()) {
+            calcFirst();
+            calcFollow();
+        }
+
+        return new LazyLRTable(this, allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
+    }
+
+    /**
+     * @return 目前已经构造出的状态的数量
+     */
+    int statusCount() {
+        return allStatusInIndexOrder.size();
+    }
+
+    private List<Production> productions;
     private final Set<TokenKind> terminals;
-    private final Set<NonTerminal> nonTerminals;
+    private Set<NonTerminal> nonTerminals;
+    private final Map<NonTerminal, List<Production>> productionsByHead = new HashMap<>();
+
+    /**
+     * 载入产生式, 收集其中的非终结符并按产生式头建立索引
+     *
+     * @param productions 文法的所有产生式
+     */
+    private void loadProductions(List<Production> productions) {
+        if (productions.get(0).body().size() != 1) {
+            throw new RuntimeException("The first production in grammar file must like S -> S'");
+        }
+
+        // 与 GrammarInfo 一样按名字收集非终结符
+        final var nonTerminalsByName = new HashMap<String, NonTerminal>();
+        this.productions = productions;
+        productionsByHead.clear();
+        for (final var production : productions) {
+            nonTerminalsByName.computeIfAbsent(production.head().getTermName(), name -> production.head());
+            productionsByHead.computeIfAbsent(production.head(), head -> new ArrayList<>()).add(production);
+            for (final var term : production.body()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    nonTerminalsByName.computeIfAbsent(nonTerminal.getTermName(), name -> nonTerminal);
+                }
+            }
+        }
+        this.nonTerminals = new HashSet<>(nonTerminalsByName.values());
+    }
 
     private final Map<Term, Set<TokenKind>> first = new HashMap<>();
     private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
@@ -69,7 +190,7 @@ public class TableGenerator {
      * 计算所有符号的 first 集合 <br>
      * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
      */
-    private void calcFirst() {
+    void calcFirst() {
         for (final var terminal : terminals) {
             first.put(terminal, Set.of(terminal));
         }
@@ -94,17 +215,15 @@ public class TableGenerator {
         }
 
         final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
-                }
+        // 在文法中寻找以该非终结符为头的产生式
+        for (final var production : getProductionsByHead(nonTerminal)) {
+            final var firstSymbol = production.body().get(0);
+            // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
+            if (!visited.contains(firstSymbol)) {
+                // 随后递归查找该产生式体的第一个文法符号的 first 集合
+                // 它的 first 集合也是该非终结符的 first 集合
+                visited.add(firstSymbol);
+                result.addAll(calcFirst(firstSymbol));
             }
         }
 
@@ -116,7 +235,7 @@ public class TableGenerator {
     /**
      * 计算所有非终结符的 follow 集合
      */
-    private void calcFollow() {
+    void calcFollow() {
         for (final var nonTerminal : nonTerminals) {
             visited.clear();
             calcFollow(nonTerminal);
@@ -177,6 +296,121 @@ public class TableGenerator {
         return result;
     }
 
+    /**
+     * 增量更新时重新计算受影响的 first 集合
+     * <br>
+     * X 的 first 只依赖于以 X 为头的产生式的体的第一个符号, 因此受影响的就是产生式集合发生变化的非终结符,
+     * 以及沿着 "体的第一个符号" 反向可达的所有非终结符.
+     *
+     * @return first 集合确实发生了变化的非终结符
+     */
+    private Set<NonTerminal> updateFirst(List<Production> oldProductions, Set<NonTerminal> changedHeads, Set<NonTerminal> changedNonTerminals) {
+        final var dependents = new HashMap<Term, Set<NonTerminal>>();
+        for (final var production : concat(oldProductions, productions)) {
+            dependents.computeIfAbsent(production.body().get(0), term -> new HashSet<>()).add(production.head());
+        }
+
+        final var seeds = new HashSet<>(changedHeads);
+        seeds.addAll(changedNonTerminals);
+        final var invalid = propagate(seeds, dependents);
+
+        final var oldFirst = new HashMap<NonTerminal, Set<TokenKind>>();
+        invalid.forEach(nonTerminal -> oldFirst.put(nonTerminal, first.remove(nonTerminal)));
+        for (final var nonTerminal : nonTerminals) {
+            if (!first.containsKey(nonTerminal)) {
+                visited.clear();
+                calcFirst(nonTerminal);
+            }
+        }
+
+        final var changed = new HashSet<NonTerminal>();
+        invalid.stream().filter(nonTerminal -> !Objects.equals(oldFirst.get(nonTerminal), first.get(nonTerminal))).forEach(changed::add);
+        return changed;
+    }
+
+    /**
+     * 增量更新时重新计算受影响的 follow 集合
+     * <br>
+     * 出现在被修改的产生式体中的非终结符, 以及在某个产生式体中紧跟着 first 集合变化了的符号的非终结符, 其 follow 可能变化;
+     * 而某个非终结符的 follow 变化时, 出现在以它为头的产生式体末尾的非终结符的 follow 也会随之变化.
+     *
+     * @return follow 集合确实发生了变化的非终结符
+     */
+    private Set<NonTerminal> updateFollow(List<Production> oldProductions, List<Production> changedProductions,
+                                          Set<NonTerminal> changedFirst, Set<NonTerminal> changedNonTerminals) {
+        final var seeds = new HashSet<>(changedNonTerminals);
+        for (final var production : changedProductions) {
+            for (final var term : production.body()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    seeds.add(nonTerminal);
+                }
+            }
+        }
+        for (final var production : productions) {
+            final var body = production.body();
+            for (int i = 0; i < body.size() - 1; i++) {
+                if (body.get(i) instanceof NonTerminal nonTerminal && changedFirst.contains(body.get(i + 1))) {
+                    seeds.add(nonTerminal);
+                }
+            }
+        }
+
+        final var dependents = new HashMap<Term, Set<NonTerminal>>();
+        for (final var production : concat(oldProductions, productions)) {
+            final var body = production.body();
+            if (body.get(body.size() - 1) instanceof NonTerminal last) {
+                dependents.computeIfAbsent(production.head(), term -> new HashSet<>()).add(last);
+            }
+        }
+        final var invalid = propagate(seeds, dependents);
+
+        final var oldFollow = new HashMap<NonTerminal, Set<TokenKind>>();
+        invalid.forEach(nonTerminal -> oldFollow.put(nonTerminal, follow.remove(nonTerminal)));
+        final var recalculated = new ArrayList<NonTerminal>();
+        for (final var nonTerminal : nonTerminals) {
+            if (!follow.containsKey(nonTerminal)) {
+                recalculated.add(nonTerminal);
+                visited.clear();
+                calcFollow(nonTerminal);
+            }
+        }
+        // 与 calcFollow() 相同, 没有 follow 的非终结符的 follow 就是 EOF
+        recalculated.stream()
+            .map(follow::get).filter(Set::isEmpty)
+            .forEach(set -> set.add(TokenKind.eof()));
+
+        final var changed = new HashSet<NonTerminal>();
+        invalid.stream().filter(nonTerminal -> !Objects.equals(oldFollow.get(nonTerminal), follow.get(nonTerminal))).forEach(changed::add);
+        return changed;
+    }
+
+    /**
+     * 沿依赖关系求出所有受 seeds 影响的非终结符
+     *
+     * @param seeds      直接受影响的非终结符
+     * @param dependents 文法符号到依赖于它的非终结符的映射
+     * @return 所有受影响的非终结符 (包括 seeds 本身)
+     */
+    private static Set<NonTerminal> propagate(Set<NonTerminal> seeds, Map<Term, Set<NonTerminal>> dependents) {
+        final var result = new HashSet<>(seeds);
+        final var unexpanded = new ArrayDeque<>(seeds);
+        while (!unexpanded.isEmpty()) {
+            for (final var dependent : dependents.getOrDefault(unexpanded.pollFirst(), Set.of())) {
+                if (result.add(dependent)) {
+                    unexpanded.add(dependent);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static List<Production> concat(List<Production> lhs, List<Production> rhs) {
+        final var result = new ArrayList<>(lhs);
+        result.addAll(rhs);
+        return result;
+    }
+
     /**
      * 表示一个项目
      * <br>
@@ -241,32 +475,301 @@ public class TableGenerator {
 
     private final Map<Set<Item>, Status> belongTo = new HashMap<>();
     private final Map<Status, Set<Item>> including = new HashMap<>();
+    private final Map<Status, Map<Term, Status>> transitions = new HashMap<>();
     private final List<Status> allStatusInIndexOrder = new ArrayList<>();
 
+    /**
+     * 规范项目集族
+     *
+     * @param itemSets 按状态编号排列的各个项目集
+     * @param edges    各个项目集关于每个文法符号的转移, 以目标项目集的编号表示
+     */
+    private record CanonicalCollection(List<Set<Item>> itemSets, List<Map<Term, Integer>> edges) {
+    }
+
     /**
      * 构造出所有状态并维护状态与项集之间的对应关系
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    void constructDFA() {
+        final var collection = constructCanonicalLRCollection();
+
+        belongTo.clear();
+        including.clear();
+        transitions.clear();
+        allStatusInIndexOrder.clear();
+        for (int idx = 0; idx < collection.itemSets().size(); idx++) {
+            registerStatus(Status.create(idx), collection.itemSets().get(idx));
+        }
+        registerTransitions(collection);
+    }
+
+    private void registerStatus(Status status, Set<Item> items) {
+        allStatusInIndexOrder.add(status);
+        including.put(status, items);
+        belongTo.put(items, status);
+    }
+
+    private void registerTransitions(CanonicalCollection collection) {
+        for (int idx = 0; idx < collection.edges().size(); idx++) {
+            final var edges = new HashMap<Term, Status>();
+            collection.edges().get(idx).forEach((term, to) -> edges.put(term, allStatusInIndexOrder.get(to)));
+            transitions.put(allStatusInIndexOrder.get(idx), edges);
+        }
+    }
+
+    private final Map<Set<Item>, Status> lazyStatusOfKernel = new HashMap<>();
+    private final Map<Status, Set<Item>> lazyKernelOf = new HashMap<>();
+
+    /**
+     * 懒惰模式下的起始状态, 即核为 S -> . S' 的状态
+     */
+    Status getLazyInit() {
+        return discover(Set.of(new Item(productions.get(0), 0)));
+    }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
+    /**
+     * 懒惰模式下根据核找到对应的状态; 若该核是第一次出现, 就为其分配一个新的 (尚未构造的) 状态
+     * <br>
+     * LR(0) 项目集由其核唯一决定, 所以只需比较核就能判断两个项目集是否是同一个状态, 而不必先求出闭包
+     */
+    private Status discover(Set<Item> kernel) {
+        var status = lazyStatusOfKernel.get(kernel);
+        if (status == null) {
+            status = Status.create(allStatusInIndexOrder.size());
             allStatusInIndexOrder.add(status);
+            lazyStatusOfKernel.put(kernel, status);
+            lazyKernelOf.put(status, kernel);
+        }
+
+        return status;
+    }
+
+    /**
+     * @return 懒惰模式下该状态是否已经被构造 (求出了闭包与转移并填充了 action 与 goto)
+     */
+    boolean isConstructed(Status status) {
+        return including.containsKey(status);
+    }
+
+    /**
+     * 懒惰模式下确保某个状态已经被构造: 求出其闭包和所有转移 (转移的目标只会被发现, 不会被构造), 并填充其 action 与 goto
+     *
+     * @param status 由 getLazyInit 或其它状态的转移得到的状态
+     */
+    void ensureConstructed(Status status) {
+        if (status.isError() || isConstructed(status)) {
+            return;
+        }
+
+        final var items = constructClosure(lazyKernelOf.get(status));
+        including.put(status, items);
+        belongTo.put(items, status);
+
+        final var edges = new HashMap<Term, Status>();
+        constructGotoKernels(items).forEach((term, kernel) -> edges.put(term, discover(kernel)));
+        transitions.put(status, edges);
+
+        fillStatus(status);
+    }
+
+    /**
+     * 增量更新时修补规范项目集族, 并原地修补发生了变化的状态
+     * <br>
+     * 状态由其核唯一确定, 所以旧状态的核换成新文法中的产生式后若仍然有效, 新文法中核相同的状态就沿用原来的 Status 对象,
+     * 在构造顺序靠前的位置修改文法也不会使后面的状态全部改变编号. 若某个状态的闭包中没有点后面是被修改的非终结符的项,
+     * 那么它的闭包与转移在新文法下都不变, 直接保留; 只有其余的状态需要重新求闭包与转移, 新出现的核也只可能从它们出发被发现.
+     * <br>
+     * 从起始状态出发沿转移遍历一遍即可得到新文法下的所有状态, 不再可达的旧状态被丢弃, 空出的编号优先分配给新状态,
+     * 仍有剩余时把编号最大的状态移过来, 使编号保持连续.
+     *
+     * @param oldStart      旧文法的第一条产生式
+     * @param remap         旧产生式到新产生式的对应
+     * @param renumbered    文本不变但编号改变了的产生式
+     * @param changedHeads  产生式集合发生了变化的非终结符
+     * @param changedFollow follow 集合发生了变化的非终结符
+     * @return 被重新填充的状态的数量
+     */
+    private int updateDFA(Production oldStart, Map<Production, Production> remap, Set<Production> renumbered,
+                          Set<NonTerminal> changedHeads, Set<NonTerminal> changedFollow) {
+        // 旧状态在新文法下的核; 核中有被删除的产生式的状态在新文法下不存在
+        final var statusOfKernel = new HashMap<Set<Item>, Status>();
+        final var kernelOfStatus = new HashMap<Status, Set<Item>>();
+        for (final var status : allStatusInIndexOrder) {
+            final var kernel = remapItems(kernelOf(including.get(status), oldStart), remap);
+            if (kernel != null) {
+                statusOfKernel.put(kernel, status);
+                kernelOfStatus.put(status, kernel);
+            }
+        }
+
+        // 从起始项目集的核出发 BFS, 求出新文法下所有可达的核, 以及它们的闭包与以核表示的转移
+        final var initKernel = Set.of(new Item(productions.get(0), 0));
+        final var reached = new LinkedHashSet<Set<Item>>(List.of(initKernel));
+        final var unexpanded = new ArrayDeque<>(reached);
+        final var closures = new HashMap<Set<Item>, Set<Item>>();
+        final var edgeKernels = new HashMap<Set<Item>, Map<Term, Set<Item>>>();
+        // 闭包与旧状态不同的核
+        final var changedItems = new HashSet<Set<Item>>();
+        while (!unexpanded.isEmpty()) {
+            final var kernel = unexpanded.pollFirst();
+            final var old = statusOfKernel.get(kernel);
+            final var oldItems = old == null ? null : remapItems(including.get(old), remap);
+
+            final Map<Term, Set<Item>> edges;
+            if (oldItems != null && oldItems.stream().noneMatch(item -> item.getAfterDot().map(changedHeads::contains).orElse(false))) {
+                // 闭包不变, 转移也不变, 且转移的目标都是核仍然有效的旧状态
+                closures.put(kernel, oldItems);
+                edges = new HashMap<>();
+                transitions.get(old).forEach((term, to) -> edges.put(term, kernelOfStatus.get(to)));
+            } else {
+                final var items = constructClosure(kernel);
+                closures.put(kernel, items);
+                edges = constructGotoKernels(items);
+                if (!items.equals(oldItems)) {
+                    changedItems.add(kernel);
+                }
+            }
+
+            edgeKernels.put(kernel, edges);
+            for (final var target : edges.values()) {
+                if (reached.add(target)) {
+                    unexpanded.add(target);
+                }
+            }
+        }
+
+        // 分配编号: 可达的旧状态沿用原来的 Status 对象, 新状态优先使用被丢弃的状态的编号 (按从小到大的顺序)
+        // 起始状态只能是 BFS 中的第一个, 若它是新状态, 旧的起始状态一定不可达, 因此它总能得到编号 0
+        final var oldSize = allStatusInIndexOrder.size();
+        final var kernelAt = new ArrayList<Set<Item>>(Collections.nCopies(oldSize, null));
+        final var freeIndices = new ArrayDeque<Integer>();
+        for (final var status : allStatusInIndexOrder) {
+            final var kernel = kernelOfStatus.get(status);
+            if (kernel != null && reached.contains(kernel)) {
+                kernelAt.set(status.index(), kernel);
+            } else {
+                freeIndices.add(status.index());
+            }
+        }
+
+        final var statusOf = new HashMap<Set<Item>, Status>();
+        for (final var kernel : reached) {
+            final var old = statusOfKernel.get(kernel);
+            if (old != null) {
+                statusOf.put(kernel, old);
+            } else {
+                final var index = freeIndices.isEmpty() ? kernelAt.size() : freeIndices.pollFirst();
+                statusOf.put(kernel, Status.create(index));
+                if (index == kernelAt.size()) {
+                    kernelAt.add(kernel);
+                } else {
+                    kernelAt.set(index, kernel);
+                }
+            }
+        }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        // 被丢弃的状态比新状态多时, 剩下的空位由编号最大的状态填上; Status 的编号不可变, 所以被移动的状态要换成新的对象
+        final var size = reached.size();
+        var top = kernelAt.size() - 1;
+        for (final var hole : freeIndices) {
+            if (hole >= size) {
+                break;
+            }
+            while (kernelAt.get(top) == null) {
+                top--;
+            }
+            final var kernel = kernelAt.get(top);
+            kernelAt.set(top, null);
+            kernelAt.set(hole, kernel);
+            statusOf.put(kernel, Status.create(hole));
         }
+
+        final var oldTransitions = new HashMap<>(transitions);
+        belongTo.clear();
+        including.clear();
+        transitions.clear();
+        allStatusInIndexOrder.clear();
+        for (int idx = 0; idx < size; idx++) {
+            final var kernel = kernelAt.get(idx);
+            final var status = statusOf.get(kernel);
+            registerStatus(status, closures.get(kernel));
+
+            final var edges = new HashMap<Term, Status>();
+            edgeKernels.get(kernel).forEach((term, target) -> edges.put(term, statusOf.get(target)));
+            transitions.put(status, edges);
+        }
+
+        int patched = 0;
+        for (final var status : allStatusInIndexOrder) {
+            final var kernel = kernelAt.get(status.index());
+            // 新的或被移动的状态, 闭包变化了的状态, 转移的目标换了对象的状态 (移入动作与 goto 引用的是 Status 对象本身),
+            // 以及需要按编号改变了的产生式或变化了的 follow 集合重新规约的状态
+            final var dirty = statusOfKernel.get(kernel) != status
+                || changedItems.contains(kernel)
+                || !sameTargets(oldTransitions.get(status), transitions.get(status))
+                || including.get(status).stream().filter(Item::isDotAtEnd).map(Item::production)
+                .anyMatch(production -> renumbered.contains(production) || changedFollow.contains(production.head()));
+
+            if (dirty) {
+                // Status.java 属于框架, 不提供清空一行的方法; action 与 goto_ 访问器返回的就是可变的表本身
+                status.action().clear();
+                status.goto_().clear();
+                fillStatus(status);
+                patched++;
+            }
+        }
+
+        return patched;
+    }
+
+    /**
+     * @return 两组转移是否关于相同的文法符号, 且转移到同一个 Status 对象
+     */
+    private static boolean sameTargets(Map<Term, Status> lhs, Map<Term, Status> rhs) {
+        return lhs.keySet().equals(rhs.keySet())
+            && lhs.entrySet().stream().allMatch(entry -> entry.getValue() == rhs.get(entry.getKey()));
+    }
+
+    /**
+     * @return 将项目集中的项换成新文法中的对应产生式后得到的项目集; 若其中有被删除的产生式则返回 null
+     */
+    private static Set<Item> remapItems(Set<Item> items, Map<Production, Production> remap) {
+        final var result = new LinkedHashSet<Item>();
+        for (final var item : items) {
+            final var production = remap.get(item.production());
+            if (production == null) {
+                return null;
+            }
+            result.add(new Item(production, item.dot()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param start 项目集所属文法的第一条产生式
+     * @return 项目集的核, 即点不在开头的项; 初始项目集的核为起始项目 S -> . S'
+     */
+    private static Set<Item> kernelOf(Set<Item> items, Production start) {
+        final var kernel = new LinkedHashSet<Item>();
+        items.stream().filter(item -> item.dot() > 0).forEach(kernel::add);
+        if (kernel.isEmpty()) {
+            return Set.of(new Item(start, 0));
+        }
+
+        return kernel;
     }
 
     /**
      * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * @return 所有以 head 为头的产生式
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private List<Production> getProductionsByHead(Term head) {
+        if (head instanceof NonTerminal nonTerminal) {
+            return productionsByHead.getOrDefault(nonTerminal, List.of());
+        } else {
+            return List.of();
+        }
     }
 
     /**
@@ -285,122 +788,137 @@ public class TableGenerator {
         while (!unexpanded.isEmpty()) {
             final var top = unexpanded.pollFirst();
             // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
+            top.getAfterDot().ifPresent(afterDot -> {
                 // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
+                for (final var production : getProductionsByHead(afterDot)) {
                     // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+                    final var item = new Item(production, 0);
+                    // 对于不在 result 中的新项, 加入队列并加入结果中
+                    if (result.add(item)) {
+                        unexpanded.add(item);
+                    }
+                }
+            });
         }
 
         return result;
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
+     * 一次性求出项集 I 关于所有文法符号 X 的 GO(I, X) 的核, 相当于对每个 X 分别做理论课中的 GO(I, X) 的前半部分
      *
      * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * @return 文法符号 X 到 I 关于 X 的后继项目集的核的映射
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
+    private Map<Term, Set<Item>> constructGotoKernels(Set<Item> items) {
+        final var kernels = new HashMap<Term, Set<Item>>();
+        for (final var item : items) {
+            // 对 I 中所有点后面是 X 的项, 求出其后继项, 这些后继项就是后继项目集的核
+            item.getAfterDot().ifPresent(afterDot ->
+                kernels.computeIfAbsent(afterDot, term -> new LinkedHashSet<>()).add(item.getNextItem().orElseThrow()));
+        }
 
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+        return kernels;
     }
 
     /**
      * 构造 LR(0) 规范项目集族
      *
-     * @param initItem 起始项目 S -> . S'
      * @return 规范项目集族
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
+    private CanonicalCollection constructCanonicalLRCollection() {
         // 先收集所有的文法符号备用
         final var terms = new LinkedHashSet<Term>();
         terms.addAll(nonTerminals);
         terms.addAll(terminals);
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
+        // 构造初始项目集族, 起始项目为 S -> . S'
+        final var initKernel = Set.of(new Item(productions.get(0), 0));
+        final var initClosure = constructClosure(initKernel);
 
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
+        final var itemSets = new ArrayList<Set<Item>>(List.of(initClosure));
+        final var edges = new ArrayList<Map<Term, Integer>>();
+        final var indexOf = new HashMap<Set<Item>, Integer>(Map.of(initClosure, 0));
 
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
+        // 同样以 BFS 形式搜索, itemSets 中下标大于等于 edges.size() 的部分就是待探索的队列
+        while (edges.size() < itemSets.size()) {
+            final var items = itemSets.get(edges.size());
+            final var kernels = constructGotoKernels(items);
 
-            // 对于每个未被探索的集族
+            final var edge = new LinkedHashMap<Term, Integer>();
             for (final var term : terms) {
                 // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+                final var kernel = kernels.get(term);
+                if (kernel == null) {
+                    continue;
                 }
+
+                final var to = constructClosure(kernel);
+                // 如果还没被加入到 result 中, 就加入 result 和待探索列表中
+                final var target = indexOf.computeIfAbsent(to, newItems -> {
+                    itemSets.add(newItems);
+                    return itemSets.size() - 1;
+                });
+                edge.put(term, target);
             }
+            edges.add(edge);
         }
 
-        return new ArrayList<>(result);
+        return new CanonicalCollection(itemSets, edges);
     }
 
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
-    private void genTable() {
-        // 依索引顺序对每个状态的每个项目
+    void genTable() {
+        // 依索引顺序对每个状态填充
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
-                        }
-                    }
+            fillStatus(status);
+        }
+    }
 
+    /**
+     * 填充分析表中某个状态对应的一行
+     *
+     * @param status 待填充的状态
+     */
+    private void fillStatus(Status status) {
+        for (final var item : including.get(status)) {
+            final var afterDotOpt = item.getAfterDot();
+
+            // 根据项目的点的位置和点后面跟着的文法符号进行分类
+            if (afterDotOpt.isEmpty()) {
+                final var argumentProduction = productions.get(0);
+                if (item.production().equals(argumentProduction)) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
+                    // A -> alpha .
+                    // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
+                    final var production = item.production();
+                    final var head = production.head();
+                    for (final var a : follow.get(head)) {
+                        status.setAction(a, Action.reduce(production));
                     }
                 }
+
+            } else {
+                final var symbol = afterDotOpt.get();
+                final var next = transitions.get(status).get(symbol);
+
+                if (symbol instanceof TokenKind tokenKind) {
+                    // A -> alpha . a beta
+                    // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
+                    status.setAction(tokenKind, Action.shift(next));
+                } else if (symbol instanceof NonTerminal nonTerminal) {
+                    // A -> alpha . B beta
+                    // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
+                    // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
+                    status.setGoto(nonTerminal, next);
+                } else {
+                    throw new RuntimeException("Unknown type of Term");
+                }
             }
         }
     }
@@ -0,0 +1,217 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * TableGenerator 在合成文法上的规模测试
+ * <br>
+ * grammar.txt 只有二十来条产生式, 很难看出 TableGenerator 中求闭包, 求转移与求 first/follow 的代码是否随文法规模超线性增长.
+ * 该程序按 GrammarInfo 的格式生成几类规模递增的合成文法, 并分别测量 calcFirst, calcFollow, constructDFA 与 genTable
+ * 各自的耗时与内存分配量. 每一行的 x 列是该阶段耗时相对于上一个规模的增长倍数, 文法规模翻倍而耗时远超两倍时便说明存在渐进复杂度问题.
+ * <br>
+ * 用法: {@code TableGeneratorBenchmark [规模...]}, 规模是生成文法时的参数, 默认为 25 50 100 200 400.
+ * 需要在项目根目录下运行, 以便读取码点文件.
+ */
+public class TableGeneratorBenchmark {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+
+        final var sizes = args.length == 0
+            ? new int[]{25, 50, 100, 200, 400}
+            : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        run("expression hierarchy", sizes, TableGeneratorBenchmark::expressionHierarchy);
+        run("statement list", sizes, TableGeneratorBenchmark::statementList);
+        run("wide alternation", sizes, TableGeneratorBenchmark::wideAlternation);
+    }
+
+    //============================== 合成文法 ==============================
+
+    // 能用作 "关键字" 与运算符的终结符; 分号被用来分隔语句, 括号, id 与 IntConst 被用来构成表达式的原子, 所以不在其中
+    private static final List<String> OPERATORS = List.of("+", "-", "*", "/", "<", ">", "=", ",", "?", ":", "int", "return");
+    private static final List<String> KEYWORDS = List.of(
+        "+", "-", "*", "/", "<", ">", "=", ",", "?", ":", "int", "return", "(", ")", "id", "IntConst");
+
+    /**
+     * n 组表达式层级, 每组各有 OPERATORS.size() 层优先级, 并由一个不同的关键字串引导:
+     * <pre>
+     * S -> k k k E_j_0;
+     * E_j_i -> E_j_i op_i E_j_(i+1);
+     * E_j_i -> E_j_(i+1);
+     * E_j_top -> ( E_j_0 ) | id | IntConst;
+     * </pre>
+     */
+    static List<String> expressionHierarchy(int n) {
+        final var lines = statementListHeader();
+        final var width = keywordWidth(n);
+        final var depth = OPERATORS.size();
+        for (int j = 0; j < n; j++) {
+            lines.add("S -> %s E_%d_0;".formatted(keyword(j, width), j));
+            for (int i = 0; i < depth; i++) {
+                lines.add("E_%d_%d -> E_%d_%d %s E_%d_%d;".formatted(j, i, j, i, OPERATORS.get(i), j, i + 1));
+                lines.add("E_%d_%d -> E_%d_%d;".formatted(j, i, j, i + 1));
+            }
+            lines.add("E_%d_%d -> ( E_%d_0 );".formatted(j, depth, j));
+            lines.add("E_%d_%d -> id;".formatted(j, depth));
+            lines.add("E_%d_%d -> IntConst;".formatted(j, depth));
+        }
+
+        return lines;
+    }
+
+    /**
+     * 一条体长为 2n 的产生式, 依次由 n 个互不相同的语句组成:
+     * <pre>
+     * P -> L;
+     * L -> S_0 Semicolon S_1 Semicolon ... S_(n-1) Semicolon;
+     * S_j -> id = IntConst;
+     * </pre>
+     */
+    static List<String> statementList(int n) {
+        final var lines = new ArrayList<String>();
+        lines.add("P -> L;");
+
+        final var body = new StringBuilder();
+        for (int j = 0; j < n; j++) {
+            body.append(j == 0 ? "" : " ").append("S_%d Semicolon".formatted(j));
+        }
+        lines.add("L -> %s;".formatted(body));
+
+        for (int j = 0; j < n; j++) {
+            lines.add("S_%d -> id = IntConst;".formatted(j));
+        }
+
+        return lines;
+    }
+
+    /**
+     * 一个有 n 个候选式的非终结符, 每个候选式是一个不同的等长关键字串:
+     * <pre>
+     * P -> S;
+     * S -> A_0 | A_1 | ... | A_(n-1);
+     * A_j -> k k k;
+     * </pre>
+     */
+    static List<String> wideAlternation(int n) {
+        final var lines = new ArrayList<String>();
+        lines.add("P -> S;");
+
+        final var width = keywordWidth(n);
+        for (int j = 0; j < n; j++) {
+            lines.add("S -> A_%d;".formatted(j));
+            lines.add("A_%d -> %s;".formatted(j, keyword(j, width)));
+        }
+
+        return lines;
+    }
+
+    private static List<String> statementListHeader() {
+        final var lines = new ArrayList<String>();
+        lines.add("P -> S_list;");
+        lines.add("S_list -> S Semicolon S_list;");
+        lines.add("S_list -> S Semicolon;");
+        return lines;
+    }
+
+    /**
+     * @return 足以区分 n 个关键字串的串长
+     */
+    private static int keywordWidth(int n) {
+        int width = 1;
+        for (long capacity = KEYWORDS.size(); capacity < n; capacity *= KEYWORDS.size()) {
+            width++;
+        }
+        return width;
+    }
+
+    /**
+     * @return 第 j 个长为 width 的关键字串, 即 j 的 KEYWORDS.size() 进制表示
+     */
+    private static String keyword(int j, int width) {
+        final var words = new ArrayList<String>();
+        for (int i = 0; i < width; i++) {
+            words.add(KEYWORDS.get(j % KEYWORDS.size()));
+            j /= KEYWORDS.size();
+        }
+        return String.join(" ", words);
+    }
+
+    //============================== 测量 ==============================
+
+    private static final int REPEAT = 5;
+
+    /**
+     * 各阶段的测量结果, 耗时取多次运行中的最小值, 内存为该阶段在当前线程上分配的字节数
+     */
+    private record Measurement(int statusCount, long[] nanos, long[] allocated) {
+    }
+
+    private static final String[] PHASES = {"calcFirst", "calcFollow", "constructDFA", "genTable"};
+
+    private static void run(String name, int[] sizes, IntFunction<List<String>> grammar) {
+        System.out.printf("== %s ==%n", name);
+        System.out.printf("%8s %7s %7s", "size", "prods", "states");
+        for (final var phase : PHASES) {
+            System.out.printf(" | %12s %8s %6s", phase + " ms", "KiB", "x");
+        }
+        System.out.println();
+
+        Measurement previous = null;
+        for (final var size : sizes) {
+            final var productions = GrammarInfo.parse(grammar.apply(size)).productionsInOrder();
+
+            // 第一次运行用于预热 JIT
+            measure(productions);
+            var best = measure(productions);
+            for (int i = 1; i < REPEAT; i++) {
+                final var current = measure(productions);
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    best.nanos()[phase] = Math.min(best.nanos()[phase], current.nanos()[phase]);
+                }
+            }
+
+            System.out.printf("%8d %7d %7d", size, productions.size(), best.statusCount());
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                final var growth = previous == null ? "" : "%.2f".formatted((double) best.nanos()[phase] / Math.max(1, previous.nanos()[phase]));
+                System.out.printf(" | %12.3f %8d %6s", best.nanos()[phase] / 1e6, best.allocated()[phase] / 1024, growth);
+            }
+            System.out.println();
+            previous = best;
+        }
+        System.out.println();
+    }
+
+    private static Measurement measure(List<Production> productions) {
+        final var generator = new TableGenerator(productions);
+        final Runnable[] phases = {generator::calcFirst, generator::calcFollow, generator::constructDFA, generator::genTable};
+
+        final var nanos = new long[phases.length];
+        final var allocated = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            final var allocatedBefore = allocatedBytes();
+            final var begin = System.nanoTime();
+            phases[phase].run();
+            nanos[phase] = System.nanoTime() - begin;
+            allocated[phase] = allocatedBytes() - allocatedBefore;
+        }
+
+        return new Measurement(generator.statusCount(), nanos, allocated);
+    }
+
+    /**
+     * @return 当前线程累计分配的字节数; 若 JVM 不支持该统计则返回 0
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported()) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
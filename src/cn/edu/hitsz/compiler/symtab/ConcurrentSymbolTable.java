@@ -0,0 +1,103 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 可被多个线程共享的符号表
+ * <br>
+ * 用于并行的词法分析, 或是让多个源文件共用一张符号表. 文本到条目的索引是一张 ConcurrentHashMap, 命中时的 findOrAdd 只是一次无锁的读;
+ * 未命中时才通过 computeIfAbsent 在对应的桶上加锁插入, 保证同一个符号只会得到一个条目. 条目的编号由一个原子计数器分配,
+ * 按编号存放条目的数组被分成固定大小的块, 块在第一次用到时通过 CAS 装入, 因此按编号查找也不需要加锁.
+ * <br>
+ * 条目的类型通过 {@link SymbolTableEntry#setType} 的 CAS 原子地设置.
+ * 由于编号在并发插入时才分配, 同一组符号在不同运行中得到的编号可能不同, 但 dumpTable 的输出只依赖于符号文本.
+ */
+public class ConcurrentSymbolTable extends SymbolTable {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 12;
+
+    private final ConcurrentHashMap<String, SymbolTableEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicReferenceArray<AtomicReferenceArray<SymbolTableEntry>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    @Override
+    public SymbolTableEntry get(String text) {
+        final var entry = entries.get(text);
+        if (entry == null) {
+            throw new RuntimeException("Symbol not found: " + text);
+        }
+        return entry;
+    }
+
+    @Override
+    public SymbolTableEntry get(int id) {
+        final var chunk = id < 0 || id >= nextId.get() ? null : chunks.get(id >>> CHUNK_BITS);
+        final var entry = chunk == null ? null : chunk.get(id & (CHUNK_SIZE - 1));
+        if (entry == null) {
+            throw new RuntimeException("Symbol id not found: " + id);
+        }
+        return entry;
+    }
+
+    @Override
+    public SymbolTableEntry findOrAdd(String text) {
+        // 命中时只做一次无锁的读, 未命中时才进入 computeIfAbsent
+        final var entry = entries.get(text);
+        return entry != null ? entry : entries.computeIfAbsent(text, this::createEntry);
+    }
+
+    @Override
+    public SymbolTableEntry add(String text) {
+        final var created = new boolean[1];
+        final var entry = entries.computeIfAbsent(text, key -> {
+            created[0] = true;
+            return createEntry(key);
+        });
+        if (!created[0]) {
+            throw new RuntimeException("Symbol already exists: " + text);
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean has(String text) {
+        return entries.containsKey(text);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    protected List<SymbolTableEntry> getAllEntries() {
+        final var result = new ArrayList<>(entries.values());
+        result.sort(Comparator.comparing(SymbolTableEntry::getText));
+        return result;
+    }
+
+    /**
+     * 在 computeIfAbsent 中调用, 此时该符号所在的桶已被锁住, 所以每个符号只会被分配一个编号
+     */
+    private SymbolTableEntry createEntry(String text) {
+        final var id = nextId.getAndIncrement();
+        if (id >>> CHUNK_BITS >= MAX_CHUNKS) {
+            throw new RuntimeException("Too many symbols");
+        }
+
+        final var entry = new SymbolTableEntry(id, text);
+        var chunk = chunks.get(id >>> CHUNK_BITS);
+        if (chunk == null) {
+            chunks.compareAndSet(id >>> CHUNK_BITS, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(id >>> CHUNK_BITS);
+        }
+        chunk.set(id & (CHUNK_SIZE - 1), entry);
+        return entry;
+    }
+}
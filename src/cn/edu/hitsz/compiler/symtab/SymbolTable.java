@@ -3,9 +3,9 @@ package cn.edu.hitsz.compiler.symtab;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * 符号表
@@ -13,10 +13,24 @@ import java.util.Map;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * <b>所有符号的所有信息</b>. 但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 实现上, 每个符号按加入顺序获得一个从 0 开始的稠密编号, 条目按编号存放在数组中; 从文本到编号的索引是一张线性探测的开放寻址散列表,
+ * 每次查找只计算一次散列. 为了 dumpTable, 表中还维护着一个按文本排好序的编号数组, 每次只需对新加入的符号排序并归并进去.
  */
 public class SymbolTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 按编号存放的条目
+    private SymbolTableEntry[] entries = new SymbolTableEntry[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // 开放寻址的索引, 槽中存放 编号 + 1, 0 代表空槽; slotHashes 缓存每个槽中符号的散列值, 以免探测时比较过多字符串
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int[] slotHashes = new int[INITIAL_CAPACITY * 2];
+
+    // 按文本排序的编号, 只覆盖编号小于 sorted.length 的符号
+    private int[] sorted = new int[0];
 
-    private final Map<String, SymbolTableEntry> entries = new HashMap<>();
     /**
      * 获取符号表中已有的条目
      *
@@ -25,15 +39,32 @@ public class SymbolTable {
      * @throws RuntimeException 该符号在表中不存在
      */
     public SymbolTableEntry get(String text) {
-        var entry = entries.get(text);
-        if (entry == null) {
+        final var id = slots[probe(text, hash(text))] - 1;
+        if (id < 0) {
             throw new RuntimeException("Symbol not found: " + text);
         }
-        return entry;
+        return entries[id];
+    }
+
+    /**
+     * 根据编号获取符号表中已有的条目
+     *
+     * @param id 符号的编号
+     * @return 该符号在符号表中的条目
+     * @throws RuntimeException 该编号在表中不存在
+     */
+    public SymbolTableEntry get(int id) {
+        if (id < 0 || id >= size) {
+            throw new RuntimeException("Symbol id not found: " + id);
+        }
+        return entries[id];
     }
 
     public SymbolTableEntry findOrAdd(String text) {
-        return has(text) ? get(text) : add(text);
+        final var hash = hash(text);
+        final var slot = probe(text, hash);
+        final var id = slots[slot] - 1;
+        return id >= 0 ? entries[id] : insert(slot, text, hash);
     }
 
     /**
@@ -44,12 +75,12 @@ public class SymbolTable {
      * @throws RuntimeException 该符号已在表中存在
      */
     public SymbolTableEntry add(String text) {
-        if (entries.containsKey(text)) {
+        final var hash = hash(text);
+        final var slot = probe(text, hash);
+        if (slots[slot] != 0) {
             throw new RuntimeException("Symbol already exists: " + text);
         }
-        var entry = new SymbolTableEntry(text);
-        entries.put(text, entry);
-        return entry;
+        return insert(slot, text, hash);
     }
 
     /**
@@ -59,16 +90,31 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return entries.containsKey(text);
+        return slots[probe(text, hash(text))] != 0;
+    }
+
+    /**
+     * @return 符号表中的条目数, 也即下一个新符号将获得的编号
+     */
+    public int size() {
+        return size;
     }
 
     /**
      * 获得符号表的所有条目以供 {@code dumpTable} 使用
      *
-     * @return 符号表的所有条目
+     * @return 符号表的所有条目, 按文本排序
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return entries;
+    protected List<SymbolTableEntry> getAllEntries() {
+        if (sorted.length < size) {
+            mergeNewEntriesIntoSorted();
+        }
+
+        final var result = new ArrayList<SymbolTableEntry>(size);
+        for (final var id : sorted) {
+            result.add(entries[id]);
+        }
+        return result;
     }
 
     /**
@@ -77,16 +123,100 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
-        entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
-
         final var lines = new ArrayList<String>();
-        for (final var entry : entriesInOrder) {
+        for (final var entry : getAllEntries()) {
             // null in %s will be "null"
             lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
         }
 
         FileUtils.writeLines(path, lines);
     }
-}
 
+    //============================== 散列表实现 ==============================
+
+    private static int hash(String text) {
+        // String 会缓存自己的 hashCode, 这里再把高位混进低位, 因为槽位只取低位
+        final var h = text.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 线性探测, 找到该符号所在的槽, 若不存在则返回探测路径上的第一个空槽
+     */
+    private int probe(String text, int hash) {
+        final var mask = slots.length - 1;
+        var slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (slotHashes[slot] == hash && entries[slots[slot] - 1].getText().equals(text)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private SymbolTableEntry insert(int slot, String text, int hash) {
+        final var id = size;
+        if (id == entries.length) {
+            entries = Arrays.copyOf(entries, id * 2);
+        }
+
+        final var entry = new SymbolTableEntry(id, text);
+        entries[id] = entry;
+        size++;
+
+        slots[slot] = id + 1;
+        slotHashes[slot] = hash;
+        // 保持装载因子不超过 1/2
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+
+        return entry;
+    }
+
+    private void rehash(int capacity) {
+        final var oldSlots = slots;
+        final var oldHashes = slotHashes;
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+
+        final var mask = capacity - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] == 0) {
+                continue;
+            }
+            var slot = oldHashes[i] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = oldSlots[i];
+            slotHashes[slot] = oldHashes[i];
+        }
+    }
+
+    /**
+     * 只对上次排序之后新加入的符号排序, 然后与已经有序的部分归并
+     */
+    private void mergeNewEntriesIntoSorted() {
+        final Comparator<Integer> byText = Comparator.comparing(id -> entries[id].getText());
+        final var fresh = new Integer[size - sorted.length];
+        for (int i = 0; i < fresh.length; i++) {
+            fresh[i] = sorted.length + i;
+        }
+        Arrays.sort(fresh, byText);
+
+        final var merged = new int[size];
+        int i = 0, j = 0, k = 0;
+        while (i < sorted.length && j < fresh.length) {
+            merged[k++] = byText.compare(sorted[i], fresh[j]) <= 0 ? sorted[i++] : fresh[j++];
+        }
+        while (i < sorted.length) {
+            merged[k++] = sorted[i++];
+        }
+        while (j < fresh.length) {
+            merged[k++] = fresh[j++];
+        }
+        sorted = merged;
+    }
+}
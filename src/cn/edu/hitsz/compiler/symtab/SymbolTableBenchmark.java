@@ -0,0 +1,127 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 符号表在多线程下的竞争测试
+ * <br>
+ * 让 1 到 N 个线程同时对同一张符号表调用 findOrAdd, 比较用一把锁保护的普通 SymbolTable 与 ConcurrentSymbolTable 的吞吐量.
+ * 负载分为两种: "hit" 模拟词法分析中反复出现的少量标识符, 几乎所有调用都命中; "miss" 中每个线程不断加入新的符号.
+ * <br>
+ * 用法: {@code SymbolTableBenchmark [最大线程数]}, 默认为可用处理器数.
+ */
+public class SymbolTableBenchmark {
+    public static void main(String[] args) {
+        final var maxThreads = args.length == 0 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[0]);
+
+        final var hitKeys = keys("hit", 1000);
+        run("hit", maxThreads, 2_000_000, thread -> hitKeys);
+        run("miss", maxThreads, 200_000, thread -> keys("miss" + thread + "_", 200_000));
+    }
+
+    private static final int REPEAT = 5;
+
+    /**
+     * @param name          负载名
+     * @param maxThreads    最大线程数
+     * @param opsPerThread  每个线程调用 findOrAdd 的次数
+     * @param keysOfThread  每个线程依次查找的符号 (循环使用)
+     */
+    private static void run(String name, int maxThreads, int opsPerThread, Function<Integer, String[]> keysOfThread) {
+        System.out.printf("== %s: %,d findOrAdd per thread ==%n", name, opsPerThread);
+        System.out.printf("%8s %20s %20s%n", "threads", "locked ops/ms", "concurrent ops/ms");
+
+        for (final var threads : threadCounts(maxThreads)) {
+            final var keys = new ArrayList<String[]>();
+            for (int thread = 0; thread < threads; thread++) {
+                keys.add(keysOfThread.apply(thread));
+            }
+
+            final var locked = best(LockedSymbolTable::new, keys, opsPerThread);
+            final var concurrent = best(ConcurrentSymbolTable::new, keys, opsPerThread);
+            final var totalOps = (double) threads * opsPerThread;
+            System.out.printf("%8d %20.0f %20.0f%n", threads, totalOps / (locked / 1e6), totalOps / (concurrent / 1e6));
+        }
+        System.out.println();
+    }
+
+    /**
+     * @return 多次运行中最短的耗时 (纳秒), 第一次运行用于预热
+     */
+    private static long best(Supplier<SymbolTable> tableFactory, ArrayList<String[]> keys, int opsPerThread) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= REPEAT; i++) {
+            final var elapsed = measure(tableFactory.get(), keys, opsPerThread);
+            if (i > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static long measure(SymbolTable table, ArrayList<String[]> keys, int opsPerThread) {
+        final var start = new CountDownLatch(1);
+        final var workers = new ArrayList<Thread>();
+        for (final var threadKeys : keys) {
+            final var worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int op = 0; op < opsPerThread; op++) {
+                    table.findOrAdd(threadKeys[op % threadKeys.length]);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        final var begin = System.nanoTime();
+        start.countDown();
+        for (final var worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * @return 1, 2, 4, ... 直到 maxThreads 的线程数序列
+     */
+    private static List<Integer> threadCounts(int maxThreads) {
+        final var result = new ArrayList<Integer>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            result.add(threads);
+        }
+        result.add(maxThreads);
+        return result;
+    }
+
+    private static String[] keys(String prefix, int count) {
+        final var random = new Random(count);
+        final var result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = prefix + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36) + i;
+        }
+        return result;
+    }
+
+    /**
+     * 作为对照的, 用一把锁保护的普通符号表
+     */
+    private static class LockedSymbolTable extends SymbolTable {
+        @Override
+        public synchronized SymbolTableEntry findOrAdd(String text) {
+            return super.findOrAdd(text);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package cn.edu.hitsz.compiler.symtab;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * 符号表条目
  */
@@ -8,10 +11,26 @@ public class SymbolTableEntry {
      * @param text 符号的文本表示. 对于标识符符号, 该参数应该为标识符文本.
      */
     public SymbolTableEntry(String text) {
+        this(-1, text);
+    }
+
+    /**
+     * @param id   符号在符号表中的编号
+     * @param text 符号的文本表示
+     */
+    SymbolTableEntry(int id, String text) {
+        this.id = id;
         this.text = text;
         this.type = null;
     }
 
+    /**
+     * @return 符号在符号表中的编号, 按加入符号表的顺序从 0 开始; 不属于任何符号表的条目为 -1
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * @return 符号的文本表示
      */
@@ -29,17 +48,28 @@ public class SymbolTableEntry {
     /**
      * 由于这个类型严格来说只能在语法分析后才能获得, 所以为了在词法分析时就构造出符号表,
      * 我们只能暴露出该接口用以修改该成员. 该成员应该且只应该被修改一次.
+     * <br>
+     * 修改通过 CAS 完成, 所以即使多个线程同时设置同一个条目的类型, 也恰好只有一个能成功.
      *
      * @param type 该标识符符号可以绑定到的源语言对象的类型
      */
     public void setType(SourceCodeType type) {
-        if (this.type != null) {
+        if (!TYPE.compareAndSet(this, null, type)) {
             throw new RuntimeException("Can NOT set type for an entry twice");
         }
-
-        this.type = type;
     }
 
+    private final int id;
     private final String text;
-    private SourceCodeType type;
+    private volatile SourceCodeType type;
+
+    private static final VarHandle TYPE;
+
+    static {
+        try {
+            TYPE = MethodHandles.lookup().findVarHandle(SymbolTableEntry.class, "type", SourceCodeType.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 }
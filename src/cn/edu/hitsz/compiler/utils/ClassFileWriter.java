@@ -0,0 +1,275 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最小的 class 文件生成器, 供 {@link IRCompiler} 使用
+ * <br>
+ * 只支持生成没有字段, 只有静态方法, 且方法中没有跳转的类, 所以不需要 StackMapTable. 常量池中的项会被去重.
+ * class 文件格式见 JVM 规范第 4 章.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    /**
+     * 常量池最多能容纳的项数
+     */
+    static final int MAX_CONSTANTS = 65535;
+
+    private static final int MAJOR_VERSION = 61; // Java 17
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_METHODREF = 10;
+    private static final int TAG_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+
+    /**
+     * @param internalName 类的内部名, 如 {@code cn/edu/hitsz/compiler/utils/CompiledIR}
+     */
+    ClassFileWriter(String internalName) {
+        thisClass = classRef(internalName);
+        superClass = classRef("java/lang/Object");
+    }
+
+    /**
+     * @return 当前常量池的项数加一, 即下一项的下标
+     */
+    int constantCount() {
+        return constantCount;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(TAG_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        final var name = utf8(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(TAG_CLASS);
+            out.writeShort(name);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        final var ownerIndex = classRef(owner);
+        final var nameIndex = utf8(name);
+        final var descriptorIndex = utf8(descriptor);
+        final var nameAndType = constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(TAG_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant("M" + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(TAG_METHODREF);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * @param access     访问标志
+     * @param name       方法名
+     * @param descriptor 方法描述符
+     * @param maxStack   操作数栈的最大深度
+     * @param maxLocals  局部变量的个数
+     * @param code       字节码, 不能含有跳转
+     */
+    void addMethod(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code) {
+        final var nameIndex = utf8(name);
+        final var descriptorIndex = utf8(descriptor);
+        final var codeName = utf8("Code");
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); // exception_table_length
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(constantCount);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces_count
+            out.writeShort(0); // fields_count
+            out.writeShort(methods.size());
+            for (final var method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, EntryWriter writer) {
+        final var existing = constants.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final var index = constantCount++;
+        constants.put(key, index);
+        return index;
+    }
+
+    /**
+     * 没有跳转的字节码序列
+     */
+    static final class Code {
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int ILOAD = 0x15;
+        static final int ALOAD_0 = 0x2a;
+        static final int IALOAD = 0x2e;
+        static final int ISTORE = 0x36;
+        static final int IASTORE = 0x4f;
+        static final int DUP = 0x59;
+        static final int IADD = 0x60;
+        static final int ISUB = 0x64;
+        static final int IMUL = 0x68;
+        static final int INEG = 0x74;
+        static final int ISHR = 0x7a;
+        static final int IUSHR = 0x7c;
+        static final int IAND = 0x7e;
+        static final int IOR = 0x80;
+        static final int IXOR = 0x82;
+        static final int IRETURN = 0xac;
+        static final int RETURN = 0xb1;
+        static final int INVOKESTATIC = 0xb8;
+        static final int WIDE = 0xc4;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ClassFileWriter owner;
+
+        Code(ClassFileWriter owner) {
+            this.owner = owner;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code iconst(int value) {
+            if (-1 <= value && value <= 5) {
+                bytes.write(ICONST_0 + value);
+            } else if (Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+            } else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                u2(value);
+            } else {
+                bytes.write(LDC_W);
+                u2(owner.integer(value));
+            }
+            return this;
+        }
+
+        /**
+         * 把另一段字节码追加到末尾
+         */
+        Code bytes(Code other) {
+            bytes.writeBytes(other.toByteArray());
+            return this;
+        }
+
+        Code iload(int local) {
+            return local(ILOAD, local);
+        }
+
+        Code istore(int local) {
+            return local(ISTORE, local);
+        }
+
+        Code invokestatic(String ownerName, String name, String descriptor) {
+            bytes.write(INVOKESTATIC);
+            u2(owner.methodRef(ownerName, name, descriptor));
+            return this;
+        }
+
+        private Code local(int opcode, int local) {
+            if (local <= 255) {
+                bytes.write(opcode);
+                bytes.write(local);
+            } else {
+                bytes.write(WIDE);
+                bytes.write(opcode);
+                u2(local);
+            }
+            return this;
+        }
+
+        private void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IREmulator 在剖析模式下累计的执行统计, 见 {@link IREmulator#setProfiling(boolean)}
+ * <br>
+ * IR 是直线代码, 一次执行总是从第一条指令开始, 到 RET, 抛出异常的指令或序列末尾为止, 所以解释循环只需在结束时记录停在哪条指令,
+ * 各指令的执行次数由此累加得到, 不必在每条指令上计数.
+ */
+public final class EmulatorProfile {
+    private final List<Instruction> instructions;
+    private final long[] counts;
+    private long runs = 0;
+    private long nanos = 0;
+    private int peakLive = 0;
+
+    EmulatorProfile(List<Instruction> instructions) {
+        this.instructions = instructions;
+        this.counts = new long[instructions.size()];
+    }
+
+    /**
+     * 记录一次执行
+     *
+     * @param last     最后执行的指令的下标, 没有执行任何指令时为 -1
+     * @param nanos    耗时 (纳秒)
+     * @param peakLive 执行中同时被定义的变量数的最大值
+     */
+    void record(int last, long nanos, int peakLive) {
+        // 差分: 第 0 到 last 条指令各执行了一次, 在 getCount 中求前缀和
+        if (last >= 0) {
+            counts[0]++;
+            if (last + 1 < counts.length) {
+                counts[last + 1]--;
+            }
+        }
+        this.runs++;
+        this.nanos += nanos;
+        this.peakLive = Math.max(this.peakLive, peakLive);
+    }
+
+    /**
+     * @return 执行的次数
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return 所有执行的总耗时 (纳秒)
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return 所有执行中同时被定义的变量数的最大值
+     */
+    public int getPeakLive() {
+        return peakLive;
+    }
+
+    /**
+     * @return 每条指令被执行的次数, 以指令下标为下标
+     */
+    public long[] getCounts() {
+        final var result = new long[counts.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            result[i] = count;
+        }
+        return result;
+    }
+
+    /**
+     * @return 每种指令被执行的次数, 以 InstructionKind 的 ordinal 为下标
+     */
+    public long[] getKindCounts() {
+        final var perIndex = getCounts();
+        final var result = new long[InstructionKind.values().length];
+        for (int i = 0; i < perIndex.length; i++) {
+            result[instructions.get(i).getKind().ordinal()] += perIndex[i];
+        }
+        return result;
+    }
+
+    /**
+     * 将统计按表格输出: 总体情况, 每种指令的执行次数, 以及每条指令的执行次数
+     *
+     * @param path 输出文件路径
+     */
+    public void dump(String path) {
+        final var lines = new ArrayList<String>();
+        final var perIndex = getCounts();
+        final var total = Arrays.stream(perIndex).sum();
+        lines.add("runs %d, time %.3f ms, executed %d instructions, peak live variables %d".formatted(runs, nanos / 1e6, total, peakLive));
+
+        lines.add("");
+        lines.add("%-8s %12s".formatted("kind", "count"));
+        final var perKind = getKindCounts();
+        for (final var kind : InstructionKind.values()) {
+            if (perKind[kind.ordinal()] > 0) {
+                lines.add("%-8s %12d".formatted(kind, perKind[kind.ordinal()]));
+            }
+        }
+
+        lines.add("");
+        lines.add("%-8s %12s  %s".formatted("index", "count", "instruction"));
+        for (int i = 0; i < perIndex.length; i++) {
+            lines.add("%-8d %12d  %s".formatted(i, perIndex[i], instructions.get(i)));
+        }
+
+        FileUtils.writeLines(path, lines);
+    }
+}
@@ -32,6 +32,11 @@ public final class FilePathConfig {
      */
     public static final String TOKEN_PATH = "data/out/token.txt";
 
+    /**
+     * 词法单元流的二进制形式, 见 Serialization
+     */
+    public static final String TOKEN_BINARY_PATH = "data/out/token.bin";
+
     /**
      * 语义分析前的符号表
      */
@@ -48,15 +53,35 @@ public final class FilePathConfig {
     public static final String NEW_SYMBOL_TABLE = "data/out/new_symbol_table.txt";
 
     /**
-     * 中间代码
+     * 优化前的中间代码, 即 IRGenerator 的直接输出
+     */
+    public static final String RAW_INTERMEDIATE_CODE_PATH = "data/out/raw_intermediate_code.txt";
+
+    /**
+     * 中间代码 (经过各优化遍之后)
      */
     public static final String INTERMEDIATE_CODE_PATH = "data/out/intermediate_code.txt";
 
+    /**
+     * 中间代码 (经过各优化遍之后) 的二进制形式, 见 Serialization
+     */
+    public static final String INTERMEDIATE_CODE_BINARY_PATH = "data/out/intermediate_code.bin";
+
+    /**
+     * 各优化遍的耗时与指令条数变化
+     */
+    public static final String PASS_REPORT_PATH = "data/out/pass_report.txt";
+
     /**
      * IR 模拟执行的结果
      */
     public static final String EMULATE_RESULT = "data/out/ir_emulate_result.txt";
 
+    /**
+     * IR 模拟执行的剖析报告, 见 EmulatorProfile
+     */
+    public static final String EMULATE_PROFILE = "data/out/ir_emulate_profile.txt";
+
     /**
      * 汇编代码
      */
@@ -0,0 +1,302 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.PackedIR;
+import cn.edu.hitsz.compiler.utils.ClassFileWriter.Code;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 把 IR 编译为 JVM 字节码的 IREmulator 编译层
+ * <br>
+ * IR 是直线代码, 被翻译为一个隐藏类 (见 {@link MethodHandles.Lookup#defineHiddenClass}) 中的静态方法, IR 变量就是方法的局部变量,
+ * 之后由 HotSpot 像编译普通 Java 代码一样编译它, 解释器的分派开销随之消失. 生成的代码中没有跳转: LT/GT 由 Integer.compare
+ * 的符号位得到, CMOV 用条件生成的全 1 或全 0 掩码 (p | -p) >> 31 在两个值之间选择.
+ * <br>
+ * HotSpot 不编译超过 8000 字节的方法, 所以指令序列被切分为若干个方法, 方法之间通过以槽位为下标的 int 数组传递活跃的变量:
+ * 每个方法开头从数组读入它用到的, 在其中没有先被定义的变量, 结尾把之后还会被读取的变量写回.
+ * <br>
+ * 只支持每个被读取的变量都已确定被定义的程序 (即模拟执行不会抛出异常, RET 的值也已定义); 其他情况, 以及超出 class 文件限制的
+ * 程序, {@link #compile(List)} 返回空, 调用者应退回解释执行.
+ */
+public final class IRCompiler {
+    /**
+     * @param instructions 指令序列
+     * @return 编译后的程序; 若该程序不被支持则为空
+     */
+    public static Optional<IRCompiler> compile(List<Instruction> instructions) {
+        var end = -1;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i).getKind().isReturn()) {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            return Optional.empty();
+        }
+
+        final var ir = PackedIR.pack(instructions.subList(0, end));
+        if (!isDefinitelyDefined(ir)) {
+            return Optional.empty();
+        }
+
+        try {
+            return new IRCompiler(ir).emit();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to load compiled IR", e);
+        }
+    }
+
+    /**
+     * @return 执行编译后的程序, 与 {@link IREmulator#execute()} 的结果相同
+     */
+    public Optional<Integer> execute() {
+        try {
+            return Optional.of((int) entry.invokeExact(new int[variableCount]));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return 生成的方法数
+     */
+    public int getMethodCount() {
+        return chunks;
+    }
+
+    //============================== 实现 ==============================
+
+    private static final String CLASS_NAME = IRCompiler.class.getPackageName().replace('.', '/') + "/CompiledIR";
+    private static final String CHUNK_DESCRIPTOR = "([I)V";
+    private static final String LAST_CHUNK_DESCRIPTOR = "([I)I";
+    // 留给方法首尾读写数组的余量之后, 每个方法的字节码不超过 HotSpot 的 8000 字节限制
+    private static final int CHUNK_BUDGET = 7000;
+    // 在方法开头读入或结尾写回一个变量的字节数的上界: aload_0, 槽位, iaload/iastore, istore/iload
+    private static final int TRANSFER_COST = 9;
+    private static final int MAX_STACK = 4;
+    private static final int MAX_METHOD_SIZE = 65535;
+
+    private final PackedIR ir;
+    private final int variableCount;
+    // 各槽位最后一次被读取的指令下标; 只在方法之间的边界上需要活跃信息, 不必做完整的活跃变量分析
+    private final int[] lastRead;
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME);
+    private MethodHandle entry = null;
+    private int chunks = 0;
+
+    // 当前方法中各槽位对应的局部变量, -1 表示尚未使用
+    private final int[] localOf;
+    private final List<Integer> touched = new ArrayList<>();
+    private final List<Integer> loads = new ArrayList<>();
+    private final List<Integer> assigned = new ArrayList<>();
+    private final BitSet isAssigned = new BitSet();
+    private int nextLocal = 1;
+
+    private IRCompiler(PackedIR ir) {
+        this.ir = ir;
+        this.variableCount = ir.variableCount();
+        this.localOf = new int[variableCount];
+        Arrays.fill(localOf, -1);
+        this.lastRead = new int[variableCount];
+        Arrays.fill(lastRead, -1);
+        for (int i = 0; i < ir.size(); i++) {
+            if (!ir.isLhsImmediate(i)) {
+                lastRead[ir.lhs(i)] = i;
+            }
+            if (ir.kind(i).getOperandCount() == 2 && !ir.isRhsImmediate(i)) {
+                lastRead[ir.rhs(i)] = i;
+            }
+            if (ir.kind(i) == InstructionKind.CMOV) {
+                lastRead[ir.result(i)] = i;
+            }
+        }
+    }
+
+    /**
+     * 按执行顺序检查每个被读取的变量是否已被定义; MOV 从已定义的变量复制, CMOV 的两个分支都已定义, 所以定义总是确定的
+     */
+    private static boolean isDefinitelyDefined(PackedIR ir) {
+        final var defined = new BitSet(ir.variableCount());
+        for (int i = 0; i < ir.size(); i++) {
+            final var kind = ir.kind(i);
+            if (!ir.isLhsImmediate(i) && !defined.get(ir.lhs(i))) {
+                return false;
+            }
+            if (kind.getOperandCount() == 2 && !ir.isRhsImmediate(i) && !defined.get(ir.rhs(i))) {
+                return false;
+            }
+            if (kind == InstructionKind.CMOV && !defined.get(ir.result(i))) {
+                return false;
+            }
+            if (kind.hasResult()) {
+                defined.set(ir.result(i));
+            }
+        }
+        return true;
+    }
+
+    private Optional<IRCompiler> emit() throws ReflectiveOperationException {
+        var body = new Code(writer);
+        for (int i = 0; i < ir.size(); i++) {
+            final var transfers = TRANSFER_COST * (loads.size() + assigned.size());
+            if (body.size() > 0 && body.size() + transfers > CHUNK_BUDGET) {
+                finishChunk(body, i - 1);
+                body = new Code(writer);
+            }
+            emitInstruction(body, i);
+        }
+        finishChunk(body, ir.size() - 1);
+
+        // 入口方法依次调用各个方法, 最后一个方法以 RET 的值返回
+        final var run = new Code(writer);
+        for (int k = 0; k < chunks; k++) {
+            run.op(Code.ALOAD_0).invokestatic(CLASS_NAME, chunkName(k), k == chunks - 1 ? LAST_CHUNK_DESCRIPTOR : CHUNK_DESCRIPTOR);
+        }
+        run.op(Code.IRETURN);
+        if (run.size() > MAX_METHOD_SIZE) {
+            return Optional.empty();
+        }
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "run", LAST_CHUNK_DESCRIPTOR, 1, 1, run.toByteArray());
+        if (writer.constantCount() > ClassFileWriter.MAX_CONSTANTS) {
+            return Optional.empty();
+        }
+
+        final var lookup = MethodHandles.lookup().defineHiddenClass(writer.toByteArray(), true);
+        entry = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(int.class, int[].class));
+        return Optional.of(this);
+    }
+
+    private void emitInstruction(Code code, int i) {
+        final var kind = ir.kind(i);
+        switch (kind) {
+            case MOV -> {
+                lhs(code, i);
+                code.istore(write(ir.result(i)));
+            }
+            case ADD, SUB, MUL -> {
+                lhs(code, i);
+                rhs(code, i);
+                code.op(switch (kind) {
+                    case ADD -> Code.IADD;
+                    case SUB -> Code.ISUB;
+                    default -> Code.IMUL;
+                });
+                code.istore(write(ir.result(i)));
+            }
+            case LT, GT -> {
+                // l < r 当且仅当 Integer.compare(l, r) 为 -1, 即其符号位为 1; l > r 即 r < l
+                if (kind == InstructionKind.LT) {
+                    lhs(code, i);
+                    rhs(code, i);
+                } else {
+                    rhs(code, i);
+                    lhs(code, i);
+                }
+                code.invokestatic("java/lang/Integer", "compare", "(II)I").iconst(31).op(Code.IUSHR);
+                code.istore(write(ir.result(i)));
+            }
+            case CMOV -> {
+                // mask = (p | -p) >> 31 在 p != 0 时全为 1, 否则为 0; x = x ^ ((x ^ v) & mask)
+                lhs(code, i);
+                code.op(Code.DUP).op(Code.INEG).op(Code.IOR).iconst(31).op(Code.ISHR);
+                code.iload(read(ir.result(i)));
+                rhs(code, i);
+                code.op(Code.IXOR).op(Code.IAND);
+                code.iload(read(ir.result(i)));
+                code.op(Code.IXOR);
+                code.istore(write(ir.result(i)));
+            }
+            case RET -> {
+                lhs(code, i);
+                code.op(Code.IRETURN);
+            }
+            default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+        }
+    }
+
+    private void finishChunk(Code body, int last) {
+        final var isLast = last == ir.size() - 1;
+        final var method = new Code(writer);
+        for (final var slot : loads) {
+            method.op(Code.ALOAD_0).iconst(slot).op(Code.IALOAD).istore(localOf[slot]);
+        }
+        method.bytes(body);
+        if (!isLast) {
+            for (final var slot : assigned) {
+                if (lastRead[slot] > last) {
+                    method.op(Code.ALOAD_0).iconst(slot).iload(localOf[slot]).op(Code.IASTORE);
+                }
+            }
+            method.op(Code.RETURN);
+        }
+
+        writer.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, chunkName(chunks),
+            isLast ? LAST_CHUNK_DESCRIPTOR : CHUNK_DESCRIPTOR, MAX_STACK, nextLocal, method.toByteArray());
+        chunks++;
+
+        for (final var slot : touched) {
+            localOf[slot] = -1;
+        }
+        touched.clear();
+        loads.clear();
+        assigned.clear();
+        isAssigned.clear();
+        nextLocal = 1;
+    }
+
+    private static String chunkName(int index) {
+        return "c" + index;
+    }
+
+    private void lhs(Code code, int i) {
+        if (ir.isLhsImmediate(i)) {
+            code.iconst(ir.lhs(i));
+        } else {
+            code.iload(read(ir.lhs(i)));
+        }
+    }
+
+    private void rhs(Code code, int i) {
+        if (ir.isRhsImmediate(i)) {
+            code.iconst(ir.rhs(i));
+        } else {
+            code.iload(read(ir.rhs(i)));
+        }
+    }
+
+    /**
+     * @return 读取槽位时使用的局部变量; 若它在当前方法中第一次出现, 则需要在方法开头从数组读入
+     */
+    private int read(int slot) {
+        if (localOf[slot] < 0) {
+            localOf[slot] = nextLocal++;
+            touched.add(slot);
+            loads.add(slot);
+        }
+        return localOf[slot];
+    }
+
+    private int write(int slot) {
+        if (localOf[slot] < 0) {
+            localOf[slot] = nextLocal++;
+            touched.add(slot);
+        }
+        if (!isAssigned.get(slot)) {
+            isAssigned.set(slot);
+            assigned.add(slot);
+        }
+        return localOf[slot];
+    }
+}
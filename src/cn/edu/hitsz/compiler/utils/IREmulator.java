@@ -4,91 +4,492 @@ import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.PackedIR;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * 用来模拟执行 IR 的类
+ * <br>
+ * 加载时先把 IR 打包为 {@link PackedIR}, 再编码为紧凑的指令数组: 每个 IR 变量与每个不同的立即数都对应一个稠密的槽位,
+ * 每条指令是操作码与三个槽位下标. 执行时所有值存放在以槽位为下标的 int 数组中, 另有一个数组记录各槽位是否已被定义,
+ * 解释循环中既不查找哈希表也不分配任何对象.
+ * <br>
+ * {@link #executeBatch(Map, int)} 在多组输入上同时执行同一段 IR: 寄存器堆按结构数组 (SoA) 排布, 每个槽位是一段各组输入的值,
+ * 每条指令是一个对这些值逐个做同一运算的循环, 由 HotSpot 自动向量化; 各组输入再被分给多个线程.
  */
 public class IREmulator {
     public static IREmulator load(List<Instruction> instructions) {
-        return new IREmulator(instructions);
+        return new IREmulator(instructions, false);
     }
 
+    /**
+     * 加载 IR, 并在第一次 execute 时尝试用 {@link IRCompiler} 把它编译为 JVM 字节码, 之后的执行都直接运行编译后的代码.
+     * 适合很大或要被反复执行的 IR; 不被编译层支持的程序自动退回解释执行. evaluateStatically 总是解释执行.
+     *
+     * @param instructions 指令序列
+     * @return 带有编译层的模拟器
+     */
+    public static IREmulator loadWithJit(List<Instruction> instructions) {
+        return new IREmulator(instructions, true);
+    }
+
+    /**
+     * @return RET 的值; 若没有执行到 RET, 或其值未被定义, 则为空
+     * @throws RuntimeException 运算或 CMOV 的条件使用了未定义的变量
+     */
     public Optional<Integer> execute() {
-        for (final var instruction : instructions) {
-            switch (instruction.getKind()) {
-                case MOV -> {
-                    final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
+        if (jit && profile == null && compiled == null) {
+            compiled = IRCompiler.compile(ir);
+        }
+        if (jit && profile == null && compiled.isPresent()) {
+            returnValue = compiled.get().execute().orElse(null);
+            return Optional.ofNullable(returnValue);
+        }
+
+        partial = false;
+        return run();
+    }
+
+    /**
+     * 部分求值: 以与 execute 相同的语义执行, 但把未定义的变量视为编译期未知的值而不是抛出异常.
+     * 未知值参与的运算结果也是未知的, 除非 CMOV 的条件未知而两个分支的值相同.
+     *
+     * @return 若执行到了 RET 且其值在编译期已知, 返回该值; 否则为空
+     */
+    public Optional<Integer> evaluateStatically() {
+        partial = true;
+        return run();
+    }
+
+    /**
+     * 开启或关闭剖析模式. 开启后每次 execute 与 evaluateStatically 都会把执行统计累计到 {@link #getProfile()} 中;
+     * 剖析模式下总是解释执行, 并使用单独的解释循环, 所以关闭时没有任何开销.
+     *
+     * @param enabled 是否开启
+     * @return this, 以便链式调用
+     */
+    public IREmulator setProfiling(boolean enabled) {
+        profile = enabled ? new EmulatorProfile(ir) : null;
+        return this;
+    }
+
+    /**
+     * @return 开启剖析模式以来累计的执行统计; 未开启时为 null
+     */
+    public EmulatorProfile getProfile() {
+        return profile;
+    }
+
+    private Optional<Integer> run() {
+        if (profile == null) {
+            return interpret();
+        }
+        final var begin = System.nanoTime();
+        try {
+            return interpretProfiled();
+        } finally {
+            profile.record(lastPc / WIDTH, System.nanoTime() - begin, peakLive);
+        }
+    }
+
+    private Optional<Integer> interpret() {
+        final int[] code = this.code;
+        final int[] values = this.values;
+        final boolean[] defined = this.defined;
+        // 常量槽位始终是已定义的
+        Arrays.fill(defined, 0, variableCount, false);
+        returnValue = null;
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            final int result = code[pc + 1], lhs = code[pc + 2], rhs = code[pc + 3];
+            switch (code[pc]) {
+                case OP_MOV -> {
+                    values[result] = values[lhs];
+                    defined[result] = defined[lhs];
                 }
 
-                case ADD -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
+                case OP_ADD, OP_SUB, OP_MUL, OP_LT, OP_GT -> {
+                    if (defined[lhs] && defined[rhs]) {
+                        final int l = values[lhs], r = values[rhs];
+                        values[result] = switch (code[pc]) {
+                            case OP_ADD -> l + r;
+                            case OP_SUB -> l - r;
+                            case OP_MUL -> l * r;
+                            case OP_LT -> l < r ? 1 : 0;
+                            default -> l > r ? 1 : 0;
+                        };
+                        defined[result] = true;
+                    } else if (partial) {
+                        defined[result] = false;
+                    } else {
+                        throw undefined(pc);
+                    }
                 }
 
-                case SUB -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
+                case OP_CMOV -> {
+                    if (defined[lhs]) {
+                        if (values[lhs] != 0) {
+                            values[result] = values[rhs];
+                            defined[result] = defined[rhs];
+                        }
+                    } else if (!partial) {
+                        throw undefined(pc);
+                    } else if (!defined[result] || !defined[rhs] || values[result] != values[rhs]) {
+                        // 条件未知, 只有两个分支的值相同时结果才是已知的
+                        defined[result] = false;
+                    }
                 }
 
-                case MUL -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
+                case OP_RET -> {
+                    // 与汇编生成一致, 执行到第一条 RET 即返回, 其后的指令不可达
+                    this.returnValue = defined[lhs] ? values[lhs] : null;
+                    return Optional.ofNullable(this.returnValue);
                 }
 
-                case LT -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs < rhs ? 1 : 0);
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
+            }
+        }
+
+        return Optional.ofNullable(this.returnValue);
+    }
+
+    /**
+     * 与 {@link #interpret()} 的语义相同, 另外记录停在哪条指令, 以及同时被定义的变量数的最大值.
+     * 两者分开是为了让不剖析时的解释循环中没有任何多余的工作, 修改指令的语义时两处要同步修改
+     */
+    private Optional<Integer> interpretProfiled() {
+        final int[] code = this.code;
+        final int[] values = this.values;
+        final boolean[] defined = this.defined;
+        int live = 0;
+        peakLive = 0;
+        // 常量槽位始终是已定义的
+        Arrays.fill(defined, 0, variableCount, false);
+        returnValue = null;
+        lastPc = code.length - WIDTH;
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            final int result = code[pc + 1], lhs = code[pc + 2], rhs = code[pc + 3];
+            final boolean wasDefined = defined[result];
+            switch (code[pc]) {
+                case OP_MOV -> {
+                    values[result] = values[lhs];
+                    defined[result] = defined[lhs];
                 }
 
-                case GT -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs > rhs ? 1 : 0);
+                case OP_ADD, OP_SUB, OP_MUL, OP_LT, OP_GT -> {
+                    if (defined[lhs] && defined[rhs]) {
+                        final int l = values[lhs], r = values[rhs];
+                        values[result] = switch (code[pc]) {
+                            case OP_ADD -> l + r;
+                            case OP_SUB -> l - r;
+                            case OP_MUL -> l * r;
+                            case OP_LT -> l < r ? 1 : 0;
+                            default -> l > r ? 1 : 0;
+                        };
+                        defined[result] = true;
+                    } else if (partial) {
+                        defined[result] = false;
+                    } else {
+                        throw undefined(pc);
+                    }
                 }
 
-                case CMOV -> {
-                    final var pred = eval(instruction.getLHS());
-                    final var trueValue = eval(instruction.getRHS());
-                    final var falseValue = eval(instruction.getResult());
-                    environment.put(instruction.getResult(), pred != 0 ? trueValue : falseValue);
+                case OP_CMOV -> {
+                    if (defined[lhs]) {
+                        if (values[lhs] != 0) {
+                            values[result] = values[rhs];
+                            defined[result] = defined[rhs];
+                        }
+                    } else if (!partial) {
+                        throw undefined(pc);
+                    } else if (!defined[result] || !defined[rhs] || values[result] != values[rhs]) {
+                        // 条件未知, 只有两个分支的值相同时结果才是已知的
+                        defined[result] = false;
+                    }
                 }
 
-                case RET -> this.returnValue = eval(instruction.getReturnValue());
+                case OP_RET -> {
+                    // 与汇编生成一致, 执行到第一条 RET 即返回, 其后的指令不可达
+                    lastPc = pc;
+                    this.returnValue = defined[lhs] ? values[lhs] : null;
+                    return Optional.ofNullable(this.returnValue);
+                }
 
-                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
             }
+            live += (defined[result] ? 1 : 0) - (wasDefined ? 1 : 0);
+            peakLive = Math.max(peakLive, live);
         }
 
         return Optional.ofNullable(this.returnValue);
     }
 
+    /**
+     * @return 程序的输入, 即在被定义之前就被读取的变量 (包括 CMOV 对其返回值的读取), 按第一次被读取的顺序
+     */
+    public List<IRVariable> getInputs() {
+        final var inputs = new ArrayList<IRVariable>();
+        final var mentioned = new BitSet(variableCount);
+        for (int i = 0; i < ir.size(); i++) {
+            final var kind = ir.kind(i);
+            if (!ir.isLhsImmediate(i)) {
+                input(ir.lhs(i), mentioned, inputs);
+            }
+            if (kind.getOperandCount() == 2 && !ir.isRhsImmediate(i)) {
+                input(ir.rhs(i), mentioned, inputs);
+            }
+            if (kind == InstructionKind.CMOV) {
+                input(ir.result(i), mentioned, inputs);
+            }
+            if (kind.isReturn()) {
+                break;
+            }
+            if (kind.hasResult()) {
+                mentioned.set(ir.result(i));
+            }
+        }
+        return inputs;
+    }
+
+    private void input(int slot, BitSet mentioned, List<IRVariable> inputs) {
+        if (!mentioned.get(slot)) {
+            mentioned.set(slot);
+            inputs.add(ir.variable(slot));
+        }
+    }
+
+    /**
+     * 批量执行: 在 N 组输入上执行 IR, 第 k 个返回值与先把各输入设为其第 k 个值再 execute 的结果相同.
+     * 每个输入 (见 {@link #getInputs()}) 都必须给出, 于是每个被读取的变量在所有组中都是已定义的.
+     *
+     * @param inputs 各输入变量到其 N 个值的映射, 多余的变量被忽略
+     * @param batch  输入的组数 N
+     * @return 各组输入下 RET 的值; 若没有 RET 则为空
+     * @throws RuntimeException 缺少某个输入, 或某个输入的值不是 N 个
+     */
+    public Optional<int[]> executeBatch(Map<IRVariable, int[]> inputs, int batch) {
+        final var inputSlots = new ArrayList<Integer>();
+        final var inputValues = new ArrayList<int[]>();
+        for (final var input : getInputs()) {
+            final var values = inputs.get(input);
+            if (values == null) {
+                throw new RuntimeException("Missing input: " + input);
+            }
+            if (values.length != batch) {
+                throw new RuntimeException("Input %s has %d values, expected %d".formatted(input, values.length, batch));
+            }
+            inputSlots.add(ir.slotOf(input));
+            inputValues.add(values);
+        }
+
+        var end = -1;
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            if (code[pc] == OP_RET) {
+                end = pc;
+                break;
+            }
+        }
+        if (end < 0) {
+            return Optional.empty();
+        }
+
+        // 每个线程的寄存器堆有 values.length 个槽位, 每个槽位存放 lanes 组输入的值
+        final var lanes = Math.max(1, Math.min(MAX_LANES, BATCH_REGISTER_BUDGET / values.length));
+        final var blocks = (batch + lanes - 1) / lanes;
+        final var tasks = Math.min(blocks, ForkJoinPool.getCommonPoolParallelism() * 4);
+        final var results = new int[batch];
+        final var last = end;
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            final var registers = new int[values.length][lanes];
+            for (int slot = variableCount; slot < values.length; slot++) {
+                Arrays.fill(registers[slot], values[slot]);
+            }
+            for (int block = blocks * task / tasks; block < blocks * (task + 1) / tasks; block++) {
+                final var offset = block * lanes;
+                final var n = Math.min(lanes, batch - offset);
+                for (int i = 0; i < inputSlots.size(); i++) {
+                    System.arraycopy(inputValues.get(i), offset, registers[inputSlots.get(i)], 0, n);
+                }
+                runBlock(registers, last, n);
+                System.arraycopy(registers[code[last + 2]], 0, results, offset, n);
+            }
+        });
+        return Optional.of(results);
+    }
+
+    /**
+     * 在一个块的 n 组输入上执行 RET 之前的所有指令. 循环体中没有分支, 以便被向量化:
+     * 有符号的 a &lt; b 取 (a - b) ^ ((a ^ b) &amp; ((a - b) ^ a)) 的符号位 (考虑了减法溢出),
+     * CMOV 用掩码 (p | -p) &gt;&gt; 31 在两个值之间选择
+     */
+    private void runBlock(int[][] registers, int end, int n) {
+        final int[] code = this.code;
+        for (int pc = 0; pc < end; pc += WIDTH) {
+            final int[] r = registers[code[pc + 1]], a = registers[code[pc + 2]], b = registers[code[pc + 3]];
+            switch (code[pc]) {
+                case OP_MOV -> System.arraycopy(a, 0, r, 0, n);
+                case OP_ADD -> {
+                    for (int k = 0; k < n; k++) {
+                        r[k] = a[k] + b[k];
+                    }
+                }
+                case OP_SUB -> {
+                    for (int k = 0; k < n; k++) {
+                        r[k] = a[k] - b[k];
+                    }
+                }
+                case OP_MUL -> {
+                    for (int k = 0; k < n; k++) {
+                        r[k] = a[k] * b[k];
+                    }
+                }
+                case OP_LT -> lessThan(r, a, b, n);
+                case OP_GT -> lessThan(r, b, a, n);
+                case OP_CMOV -> {
+                    for (int k = 0; k < n; k++) {
+                        final int p = a[k];
+                        r[k] ^= (r[k] ^ b[k]) & ((p | -p) >> 31);
+                    }
+                }
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
+            }
+        }
+    }
+
+    private static void lessThan(int[] r, int[] a, int[] b, int n) {
+        for (int k = 0; k < n; k++) {
+            final int x = a[k], y = b[k], d = x - y;
+            r[k] = (d ^ ((x ^ y) & (d ^ x))) >>> 31;
+        }
+    }
+
+    private RuntimeException undefined(int pc) {
+        lastPc = pc;
+        return new RuntimeException("Use of undefined variable in " + ir.get(pc / WIDTH));
+    }
+
+    /**
+     * 按模拟执行的语义计算一条二元运算指令, 供优化中的常量折叠使用以保证两者一致
+     *
+     * @param kind 指令种类, 必须是 ADD, SUB, MUL, LT 或 GT
+     * @param lhs  左参数的值
+     * @param rhs  右参数的值
+     * @return 运算结果
+     */
+    public static int compute(InstructionKind kind, int lhs, int rhs) {
+        return switch (kind) {
+            case ADD -> lhs + rhs;
+            case SUB -> lhs - rhs;
+            case MUL -> lhs * rhs;
+            case LT -> lhs < rhs ? 1 : 0;
+            case GT -> lhs > rhs ? 1 : 0;
+            default -> throw new RuntimeException("Not an arithmetic instruction kind: " + kind);
+        };
+    }
+
+    /**
+     * @return 上一次解释执行结束时该值的值, 未定义的变量为 null (编译层执行时不更新)
+     */
     public Integer eval(IRValue value) {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            final var slot = ir.slotOf(variable);
+            return slot != PackedIR.NO_SLOT && defined[slot] ? values[slot] : null;
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
     }
 
-    private IREmulator(List<Instruction> instructions) {
-        this.instructions = instructions;
-        this.environment = new HashMap<>();
+    /**
+     * 预解析: 变量使用其槽位, 每个不同的立即数也分配一个槽位 (排在变量之后), 其值在加载时写入且始终是已定义的,
+     * 于是每条指令都编码为 (操作码, 返回值, 参数一, 参数二) 四个槽位下标, 解释循环中不必区分参数是否为立即数
+     */
+    private IREmulator(List<Instruction> instructions, boolean jit) {
+        this.ir = PackedIR.pack(instructions);
+        this.jit = jit;
+        this.variableCount = ir.variableCount();
+        this.code = new int[ir.size() * WIDTH];
+
+        final var constantSlots = new HashMap<Integer, Integer>();
+        final var constants = new ArrayList<Integer>();
+        for (int i = 0; i < ir.size(); i++) {
+            final var kind = ir.kind(i);
+            final var pc = i * WIDTH;
+            code[pc] = opcode(kind);
+            code[pc + 1] = kind.hasResult() ? ir.result(i) : 0;
+            code[pc + 2] = ir.isLhsImmediate(i) ? constantSlot(ir.lhs(i), constantSlots, constants) : ir.lhs(i);
+            if (kind.getOperandCount() == 2) {
+                code[pc + 3] = ir.isRhsImmediate(i) ? constantSlot(ir.rhs(i), constantSlots, constants) : ir.rhs(i);
+            }
+        }
+
+        this.values = new int[variableCount + constants.size()];
+        this.defined = new boolean[values.length];
+        for (int i = 0; i < constants.size(); i++) {
+            values[variableCount + i] = constants.get(i);
+            defined[variableCount + i] = true;
+        }
         this.returnValue = null;
     }
 
-    private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
+    private int constantSlot(int value, Map<Integer, Integer> constantSlots, List<Integer> constants) {
+        return constantSlots.computeIfAbsent(value, key -> {
+            constants.add(key);
+            return variableCount + constants.size() - 1;
+        });
+    }
+
+    private static final int WIDTH = 4;
+    // 批量执行时每块最多的输入组数, 以及每个线程的寄存器堆最多占用的 int 数
+    private static final int MAX_LANES = 1024;
+    private static final int BATCH_REGISTER_BUDGET = 1 << 21;
+    // 操作码, 与 InstructionKind 的声明顺序无关
+    private static final int OP_MOV = 0;
+    private static final int OP_ADD = 1;
+    private static final int OP_SUB = 2;
+    private static final int OP_MUL = 3;
+    private static final int OP_LT = 4;
+    private static final int OP_GT = 5;
+    private static final int OP_CMOV = 6;
+    private static final int OP_RET = 7;
+
+    private static int opcode(InstructionKind kind) {
+        return switch (kind) {
+            case MOV -> OP_MOV;
+            case ADD -> OP_ADD;
+            case SUB -> OP_SUB;
+            case MUL -> OP_MUL;
+            case LT -> OP_LT;
+            case GT -> OP_GT;
+            case CMOV -> OP_CMOV;
+            case RET -> OP_RET;
+        };
+    }
+
+    private final PackedIR ir;
+    private final int variableCount;
+    // 每条指令占 WIDTH 个 int: 操作码, 返回值, 参数一, 参数二 (均为槽位)
+    private final int[] code;
+    // 以槽位为下标的寄存器堆, 前 variableCount 个槽位是变量, 之后是常量
+    private final int[] values;
+    private final boolean[] defined;
     private Integer returnValue;
+    private boolean partial = false;
+    private final boolean jit;
+    // 剖析模式下的统计, null 表示未开启; 以及上一次执行最后执行的指令与同时被定义的变量数的最大值
+    private EmulatorProfile profile = null;
+    private int lastPc = 0;
+    private int peakLive = 0;
+    // 编译层的结果, null 表示尚未尝试编译, 空表示不被支持
+    private Optional<IRCompiler> compiled = null;
 }
@@ -0,0 +1,271 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariablePool;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.PackedIR;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 词法单元流与 IR 的紧凑二进制格式, 以及 intermediate_code.txt 文本格式的读取
+ * <br>
+ * 各阶段的文本输出是为了方便比对的, 不便于读回. 二进制格式让各阶段可以分开运行: 例如保存优化后的 IR, 之后直接从文件驱动
+ * IREmulator 与 AssemblyGenerator (见 {@link cn.edu.hitsz.compiler.Backend}), 不必再做词法与语法分析.
+ * <br>
+ * 两种格式都以 4 字节的魔数开头, 整数采用变长编码 (每字节 7 位, 立即数先做 zigzag 变换), 字符串采用 DataOutput 的 UTF 格式:
+ * <ul>
+ *     <li>词法单元流: "TKB1", 种类表 (种类数, 各种类的标识符), 词法单元数, 每个词法单元为 (种类在表中的下标, 文本)</li>
+ *     <li>IR: "IRB1", 变量表 (变量数, 各变量的名字), 指令数, 每条指令为 (种类, 参数是否为立即数的标志, 返回值的变量下标, 各参数),
+ *     参数是立即数时存放其值, 否则存放变量下标; RET 没有返回值一项. 布局与 {@link PackedIR} 相同</li>
+ * </ul>
+ */
+public final class Serialization {
+    private static final int TOKEN_MAGIC = 0x544b4231; // "TKB1"
+    private static final int IR_MAGIC = 0x49524231; // "IRB1"
+    private static final int LHS_IMMEDIATE = 1;
+    private static final int RHS_IMMEDIATE = 2;
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+
+    //============================== 词法单元流 ==============================
+
+    public static void writeTokens(String path, Iterable<Token> tokens) {
+        final var kindIndex = new HashMap<String, Integer>();
+        final var kinds = new ArrayList<String>();
+        final var indices = new ArrayList<Integer>();
+        final var texts = new ArrayList<String>();
+        for (final var token : tokens) {
+            indices.add(kindIndex.computeIfAbsent(token.getKindId(), id -> {
+                kinds.add(id);
+                return kinds.size() - 1;
+            }));
+            texts.add(token.getText());
+        }
+
+        try (final var out = output(path)) {
+            out.writeInt(TOKEN_MAGIC);
+            writeVarInt(out, kinds.size());
+            for (final var kind : kinds) {
+                out.writeUTF(kind);
+            }
+            writeVarInt(out, indices.size());
+            for (int i = 0; i < indices.size(); i++) {
+                writeVarInt(out, indices.get(i));
+                out.writeUTF(texts.get(i));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * @param path       文件路径
+     * @param tokenKinds 标识符到 TokenKind 的 Map, 用于还原词法单元的种类
+     * @return 读出的词法单元流
+     */
+    public static List<Token> readTokens(String path, Map<String, TokenKind> tokenKinds) {
+        try (final var in = input(path)) {
+            expectMagic(in, TOKEN_MAGIC, path);
+            final var kinds = new TokenKind[readVarInt(in)];
+            for (int i = 0; i < kinds.length; i++) {
+                final var id = in.readUTF();
+                kinds[i] = tokenKinds.get(id);
+                if (kinds[i] == null) {
+                    throw new RuntimeException("Unknown token kind in %s: %s".formatted(path, id));
+                }
+            }
+
+            final var count = readVarInt(in);
+            final var tokens = new ArrayList<Token>(count);
+            for (int i = 0; i < count; i++) {
+                final var kind = kinds[readVarInt(in)];
+                tokens.add(Token.normal(kind, in.readUTF()));
+            }
+            return tokens;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    //============================== IR ==============================
+
+    public static void writeIR(String path, List<Instruction> instructions) {
+        final var packed = PackedIR.pack(instructions);
+        try (final var out = output(path)) {
+            out.writeInt(IR_MAGIC);
+            writeVarInt(out, packed.variableCount());
+            for (int slot = 0; slot < packed.variableCount(); slot++) {
+                out.writeUTF(packed.variable(slot).getName());
+            }
+
+            writeVarInt(out, packed.size());
+            for (int i = 0; i < packed.size(); i++) {
+                final var kind = packed.kind(i);
+                final var flags = (packed.isLhsImmediate(i) ? LHS_IMMEDIATE : 0) | (packed.isRhsImmediate(i) ? RHS_IMMEDIATE : 0);
+                out.writeByte(kind.ordinal());
+                out.writeByte(flags);
+                if (kind.hasResult()) {
+                    writeVarInt(out, packed.result(i));
+                }
+                writeOperand(out, packed.lhs(i), packed.isLhsImmediate(i));
+                if (kind.getOperandCount() == 2) {
+                    writeOperand(out, packed.rhs(i), packed.isRhsImmediate(i));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * @param path      文件路径
+     * @param variables 用于创建读出的 IR 变量的变量池, 通常是之后处理这些 IR 的编译上下文的变量池
+     * @return 读出的 IR
+     */
+    public static List<Instruction> readIR(String path, IRVariablePool variables) {
+        try (final var in = input(path)) {
+            expectMagic(in, IR_MAGIC, path);
+            final var slots = new IRVariable[readVarInt(in)];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = variables.fromName(in.readUTF());
+            }
+
+            final var count = readVarInt(in);
+            final var instructions = new ArrayList<Instruction>(count);
+            for (int i = 0; i < count; i++) {
+                final var kind = KINDS[in.readUnsignedByte()];
+                final var flags = in.readUnsignedByte();
+                final var result = kind.hasResult() ? slots[readVarInt(in)] : null;
+                final var lhs = readOperand(in, slots, (flags & LHS_IMMEDIATE) != 0);
+                final var operands = kind.getOperandCount() == 2
+                    ? List.of(lhs, readOperand(in, slots, (flags & RHS_IMMEDIATE) != 0))
+                    : List.of(lhs);
+                instructions.add(Instruction.create(kind, result, operands));
+            }
+            return instructions;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 读取 intermediate_code.txt 格式的文本 IR, 每行形如 {@code (ADD, $0, a, 3)} 或 {@code (RET, , $1)}
+     *
+     * @param path      文件路径
+     * @param variables 用于创建读出的 IR 变量的变量池
+     * @return 读出的 IR
+     */
+    public static List<Instruction> readIRText(String path, IRVariablePool variables) {
+        final var instructions = new ArrayList<Instruction>();
+        for (final var line : FileUtils.readLines(path)) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            final var trimmed = line.strip();
+            if (!trimmed.startsWith("(") || !trimmed.endsWith(")")) {
+                throw new RuntimeException("Illegal IR line: " + line);
+            }
+            final var fields = trimmed.substring(1, trimmed.length() - 1).split(",", -1);
+            final var kind = InstructionKind.valueOf(fields[0].strip());
+            final var resultName = fields[1].strip();
+            final var result = resultName.isEmpty() ? null : variables.fromName(resultName);
+            final var operands = new ArrayList<IRValue>();
+            for (int i = 2; i < fields.length; i++) {
+                operands.add(parseValue(fields[i].strip(), variables));
+            }
+            instructions.add(Instruction.create(kind, result, operands));
+        }
+        return instructions;
+    }
+
+    /**
+     * 读取 IR 文件, 根据开头的魔数判断是二进制格式还是文本格式
+     *
+     * @param path      文件路径
+     * @param variables 用于创建读出的 IR 变量的变量池
+     * @return 读出的 IR
+     */
+    public static List<Instruction> loadIR(String path, IRVariablePool variables) {
+        try (final var in = input(path)) {
+            if (in.available() >= 4 && in.readInt() == IR_MAGIC) {
+                return readIR(path, variables);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+        return readIRText(path, variables);
+    }
+
+    //============================== 编码 ==============================
+
+    private static IRValue parseValue(String text, IRVariablePool variables) {
+        final var first = text.charAt(0);
+        if (Character.isDigit(first) || first == '-') {
+            return IRImmediate.of(Integer.parseInt(text));
+        }
+        return variables.fromName(text);
+    }
+
+    private static void writeOperand(DataOutputStream out, int value, boolean immediate) throws IOException {
+        // 立即数可能为负, 先做 zigzag 变换使绝对值小的数编码短
+        writeVarInt(out, immediate ? (value << 1) ^ (value >> 31) : value);
+    }
+
+    private static IRValue readOperand(DataInputStream in, IRVariable[] slots, boolean immediate) throws IOException {
+        final var raw = readVarInt(in);
+        return immediate ? IRImmediate.of((raw >>> 1) ^ -(raw & 1)) : slots[raw];
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final var b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    private static void expectMagic(DataInputStream in, int magic, String path) throws IOException {
+        if (in.readInt() != magic) {
+            throw new RuntimeException("Not a serialized file of the expected kind: " + path);
+        }
+    }
+
+    private static DataOutputStream output(String path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(path))));
+    }
+
+    private static DataInputStream input(String path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))));
+    }
+
+    private Serialization() {
+    }
+}
@@ -0,0 +1,44 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRVariablePool;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.List;
+
+/**
+ * CopyPropagation 的回归测试, 没有依赖测试框架, 编译后直接以 java 运行, 失败时抛出 AssertionError
+ */
+public class CopyPropagationTest {
+    public static void main(String[] args) {
+        undefinedTemp();
+        System.out.println("CopyPropagationTest passed");
+    }
+
+    /**
+     * 从 Backend 读入的 IR 中可能有在定义之前就被读取的临时变量 (IREmulator 把它们当作输入), 该遍不应因此失败
+     */
+    private static void undefinedTemp() {
+        final var pool = new IRVariablePool();
+        final var a = pool.named("a");
+        final var t0 = pool.temp(0);
+        final var t2 = pool.temp(2);
+        final var t3 = pool.temp(3);
+        final var instructions = List.of(
+            Instruction.createMov(a, t2),
+            Instruction.createMov(t2, t0),
+            Instruction.createMov(t2, IRImmediate.of(Integer.MAX_VALUE)),
+            Instruction.createRet(t3));
+
+        final var result = new CopyPropagation().run(instructions);
+        // $0 没有定义, 不能把它的定义重命名为 $2, 所以没有指令被删去
+        check(result.size() == instructions.size(), "expected %d instructions, got %s".formatted(instructions.size(), result));
+        check(result.get(1).toString().equals(instructions.get(1).toString()), "MOV from undefined temp changed: " + result);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}